@@ -1,18 +1,21 @@
 package blchatel.polygonmap;
 
+import blchatel.polygonmap.fortune.DelaunayVoronoi;
+import blchatel.polygonmap.fortune.ParallelVoronoi;
 import blchatel.polygonmap.fortune.Voronoi;
 import blchatel.polygonmap.fortune.VoronoiCell;
 import blchatel.polygonmap.geometry2d.*;
 import blchatel.polygonmap.geometry2d.Rectangle;
 import blchatel.polygonmap.io.Config;
 import blchatel.polygonmap.io.FileSystem;
+import blchatel.polygonmap.relaxation.MultilevelRelaxation;
 import blchatel.polygonmap.swing.DrawSupport;
 import blchatel.polygonmap.swing.SwingShape;
 import blchatel.polygonmap.swing.SwingWindow;
 
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class PolygonMap {
@@ -38,8 +41,8 @@ public class PolygonMap {
 
     private void start(){
 
-        // Init the random generator
-        Random r = new Random(c.get("RANDOM", "seed1", int.class));
+        // Init the random generator, parallel jobs using its split streams
+        SplitRandom r = new SplitRandom(c.get("RANDOM", "seed1", int.class));
 
         // Init the bounding box
         int width = c.get("MAP", "width", int.class);
@@ -48,23 +51,59 @@ public class PolygonMap {
 
         // Generate the point site sample
         int samples = c.get("MAP", "samples", int.class);
-        Set<Vector> points = new HashSet<>();
-        for(int i = 0; i < samples; i++){
-            Vector v = rec.sample(r);
-            points.add(v);
+        PointArray points = new PointArray(samples);
+        if("poisson".equals(c.get("MAP", "sampler"))){
+            // Well spaced sites (about the same number), large maps being sampled tile by tile in parallel
+            PoissonDisc poisson = new PoissonDisc(PoissonDisc.radius(rec.surface(), samples));
+            List<Vector> sample = samples >= c.get("MAP", "parallelSites", int.class) ?
+                    poisson.sample(rec, r, ForkJoinPool.commonPool()) : poisson.sample(rec, r);
+            for(Vector v : sample)
+                points.add(v);
+        }
+        else {
+            double[] xs = new double[samples], ys = new double[samples];
+            if(samples >= c.get("MAP", "parallelSites", int.class))
+                rec.sample(r, xs, ys, 0, samples, ForkJoinPool.commonPool());
+            else
+                rec.sample(r, xs, ys, 0, samples);
+            // Sites closer than Vector.EPSILON are welded, they would build degenerate cells
+            PointSet sites = new PointSet(Vector.EPSILON, samples);
+            for(int i = 0; i < samples; i++)
+                sites.add(xs[i], ys[i]);
+            for(int i = 0; i < sites.size(); i++)
+                points.add(sites.x(i), sites.y(i));
         }
 
-        // Generate the diagram with Lloyd's relaxation
+        // Generate the diagram with Lloyd's relaxation, coarse to fine when several levels are given
+        // (a single level is the plain relaxation of all the sites)
         int its = c.get("MAP", "lloydIt", int.class);
-        for(int i = 0; i < its; i++){
-            Voronoi diagram = new Voronoi(points, rec);
-            diagram.draw(support);
-            points = diagram.cellCentroids();
+        double tolerance = c.get("MAP", "lloydTolerance", double.class);
+        int levels = Math.max(1, c.get("MAP", "lloydLevels", int.class));
+        int[] levelIts = {its};
+        if(levels > 1){
+            // The last iteration count is repeated by the missing levels
+            String[] counts = c.get("MAP", "lloydLevelIt").split(",");
+            levelIts = new int[levels];
+            for(int l = 0; l < levels; l++)
+                levelIts[l] = Integer.parseInt(counts[Math.min(l, counts.length-1)].trim());
+        }
+        if(levelIts[levels-1] > 0){
+            MultilevelRelaxation lloyd = new MultilevelRelaxation(rec, levelIts, tolerance, r);
+            // The local mode edits the diagrams of the Delaunay engine, large site sets are built by the parallel one
+            double localThreshold = c.get("MAP", "lloydLocalThreshold", double.class);
+            if(localThreshold > 0)
+                lloyd.setEngine(new DelaunayVoronoi.Builder(rec));
+            else if(samples >= c.get("MAP", "parallelSites", int.class))
+                lloyd.setEngine(new ParallelVoronoi.Builder(rec));
+            // Late iterations only rebuild the cells around the sites which still move
+            lloyd.setLocalThreshold(localThreshold);
+            lloyd.setListener((l, i, diagram, max, mean) -> diagram.draw(support));
+            points = lloyd.relax(points);
         }
 
         /*
-        for(Vector v : points){
-            support.registerShape(new SwingShape(v.toPath(), Color.BLUE, 10));
+        for(int i = 0; i < points.size(); i++){
+            support.registerShape(new SwingShape(points.get(i).toPath(), Color.BLUE, 10));
         }
         support.refresh();
         */
@@ -1,394 +1,568 @@
 package blchatel.polygonmap.fortune;
 
-import blchatel.polygonmap.geometry2d.*;
+import blchatel.polygonmap.geometry2d.Vector;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 /**
- * The beach line implementation as a binary Tree structure
- * - Each Arc is a Leaf
- * - Each BreakPoint between arcs are Node
- * - The tree is sorted by x-coordinate of the point of interest (site or breakpoint)
- * The beach line is delimited by a box.
+ * The beach line implementation as a binary tree sorted by x-coordinate, stored in struct-of-arrays form:
+ * - Each node is an int index into parallel arrays (tree links, heights, cells, half-edges, circle events)
+ * - An arc is a leaf (no child), a breakpoint is an internal node (two children)
+ * - The released nodes are recycled through a free list chained by the parent array
+ * - The sites are referenced by cell id (their index into the diagram cells) and their coordinates copied
+ *   into primitive arrays, hence the descent of the tree never dereferences an object
+ * Each breakpoint stores the cells of the arcs on its left and on its right: the arcs are never searched
+ * to evaluate its position.
+ * @see Voronoi
  */
-public class BeachLine {
+final class BeachLine {
+
+    /** The null node index */
+    static final int NIL = -1;
+
+    /// Indicate if the tree is re-balanced after each update
+    private final boolean balanced;
+    /// The root node, NIL if the beach line is empty
+    private int root;
+
+    /// Tree links and subtree heights (a leaf has height 1)
+    private int[] parent, left, right, height;
+    /// Arc: cell id in leftCell. Breakpoint: cell ids of the arc on the left and of the arc on the right
+    private int[] leftCell, rightCell;
+    /// Breakpoint twin half-edges, respectively of the left and of the right cell
+    private Dcel.HalfEdge[] leftEdge, rightEdge;
+    /// Arc circle event
+    private CircleEvent[] event;
+    /// Number of nodes ever used and head of the free list
+    private int used, free;
+
+    /// Site coordinates by cell id
+    private double[] siteX, siteY;
+    /// Output of the split, reused between two calls
+    private final int[] split;
 
-    /// The root node: null by default
-    private Node root;
-    /// Used to delimiter the beach line
-    private final Rectangle box;
+    /**
+     * BeachLine Constructor: an empty beach line
+     * @param capacity (int): the expected number of sites
+     * @param balanced (boolean): true to keep the tree balanced, false for the plain binary tree (benchmark only)
+     */
+    BeachLine(int capacity, boolean balanced){
+        this.balanced = balanced;
+        this.split = new int[2];
+        allocate(Math.max(16, capacity));
+        siteX = new double[Math.max(16, capacity)];
+        siteY = new double[siteX.length];
+        clear();
+    }
 
     /**
-     * BeachLine Default Constructor
-     * @param box (Rectangle):
-     * @param rootCell (VoronoiCell):
+     * Resize the node arrays (keeping their content)
+     * @param capacity (int): the new number of nodes
      */
-    BeachLine(Rectangle box, VoronoiCell rootCell){
-        this.root = new Arc(rootCell);
-        this.box = box;
+    private void allocate(int capacity){
+        if(parent == null){
+            parent = new int[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            height = new int[capacity];
+            leftCell = new int[capacity];
+            rightCell = new int[capacity];
+            leftEdge = new Dcel.HalfEdge[capacity];
+            rightEdge = new Dcel.HalfEdge[capacity];
+            event = new CircleEvent[capacity];
+            return;
+        }
+        parent = Arrays.copyOf(parent, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        leftCell = Arrays.copyOf(leftCell, capacity);
+        rightCell = Arrays.copyOf(rightCell, capacity);
+        leftEdge = Arrays.copyOf(leftEdge, capacity);
+        rightEdge = Arrays.copyOf(rightEdge, capacity);
+        event = Arrays.copyOf(event, capacity);
+    }
+
+    /** Empty the beach line and recycle all its nodes */
+    void clear(){
+        root = NIL;
+        Arrays.fill(leftEdge, 0, used, null);
+        Arrays.fill(rightEdge, 0, used, null);
+        Arrays.fill(event, 0, used, null);
+        used = 0;
+        free = NIL;
     }
 
     /**
-     * Remove an Arc from the beach line and update the structure accordingly
-     * @param alpha (Arc): the arc to remove
+     * Copy the site coordinates of the cells, indexed by their id
+     * @param cells (List of VoronoiCell): the cells of the diagram, the id of each cell being its index
      */
-    void remove(Arc alpha){
+    void setSites(List<VoronoiCell> cells){
+        int n = cells.size();
+        if(siteX.length < n){
+            siteX = new double[n];
+            siteY = new double[n];
+        }
+        for(int i = 0; i < n; i++){
+            Vector p = cells.get(i).getP();
+            siteX[i] = p.x;
+            siteY[i] = p.y;
+        }
+    }
 
-        if(alpha == null)
-            return;
-        if(alpha.equals(root))
-            root=null;
-        //else it has at least one ancestor
+    /** @return (boolean): true if the beach line has no arc */
+    boolean isEmpty(){
+        return root == NIL;
+    }
 
-        Node grandParent = alpha.parent.parent;
+    /**
+     * Insert the first arc into an empty beach line
+     * @param cell (int): the cell id of the arc
+     */
+    void insertRoot(int cell){
+        root = newNode();
+        leftCell[root] = cell;
+    }
 
-        if(grandParent == null){
-            // Only one ancestor level hence the parent is the root so remove the full branch and update the root
-            if(alpha.equals(alpha.parent.childLeft)) root = alpha.parent.childRight;
-            if(alpha.equals(alpha.parent.childRight)) root = alpha.parent.childLeft;
+    /**
+     * Take a new node from the free list (or from the end of the arrays)
+     * @return (int): the node, a leaf free of any link
+     */
+    private int newNode(){
+        int i;
+        if(free != NIL){
+            i = free;
+            free = parent[i];
         }
         else {
-            if (alpha.parent.childLeft.equals(alpha)) {
-                if (grandParent.childLeft.equals(alpha.parent)) grandParent.setLeftChild(alpha.parent.childRight);
-                if (grandParent.childRight.equals(alpha.parent)) grandParent.setRightChild(alpha.parent.childRight);
-            } else {
-                if (grandParent.childLeft.equals(alpha.parent)) grandParent.setLeftChild(alpha.parent.childLeft);
-                if (grandParent.childRight.equals(alpha.parent)) grandParent.setRightChild(alpha.parent.childLeft);
-            }
+            if(used == parent.length)
+                allocate(2*used);
+            i = used++;
         }
-        alpha.parent = null;
+        parent[i] = NIL;
+        left[i] = NIL;
+        right[i] = NIL;
+        height[i] = 1;
+        return i;
     }
 
     /**
-     * From two given break point, determine which one is higher in the tree structure
-     * Note: we assume bp1 and bp2 are breakpoints of the given arc which means both are ancestor of it
-     * Note: if the returned value cannot be determined from the assumption, throw an exception
-     * @param arc (Arc): the concerned arc
-     * @param bp1 (BreakPoint): first breakpoint of given arc (an ancestor of it in the tree)
-     * @param bp2 (BreakPoint): second breakpoint of given arc (an ancestor of it in the tree)
-     * @return (BreakPoint): the highest breakpoint, either bp1 or bp2
+     * Give back a node to the free list
+     * @param i (int): the node to release
      */
-    BreakPoint determineHigher(Arc arc, BreakPoint bp1, BreakPoint bp2) {
-        BreakPoint higher = null;
-        Node alpha = arc;
-        while (!alpha.equals(root)) {
-            alpha = alpha.parent;
-            if (alpha.equals(bp1)) higher = bp1;
-            if (alpha.equals(bp2)) higher = bp2;
-        }
-        if(higher==null)
-            throw new IllegalStateException();
-        return higher;
+    private void release(int i){
+        leftEdge[i] = null;
+        rightEdge[i] = null;
+        event[i] = null;
+        parent[i] = free;
+        free = i;
     }
 
 
+    /// Node accessors
+
     /**
-     * Find the Arc directly (vertically) above the given point (which is generally a new site)
-     * This function is used to know which arc we need to split
-     * @param pi (Vector): the new site
-     * @return (Arc): the arc directly above (i.e. the arc to split)
+     * @param arc (int): an arc
+     * @return (int): the cell id of the arc
      */
-    Arc getArcAbove(Vector pi){
-        Node bp = root;
-
-        while(!(bp instanceof Arc)) {
-            double x = getCurrentEdgeTail((BreakPoint) bp, pi.y).x;
-            if(x>pi.x) bp = bp.childLeft;
-            else bp = bp.childRight;
-        }
-        return (Arc) bp;
+    int cell(int arc){
+        return leftCell[arc];
     }
 
-
     /**
-     * Compute the current (i.e. temporary) second end (xy-coordinates)
-     * of an unfinished halfEdge represented as current breakpoint position.
-     * @param bp (BreakPoint): the break point to compute x-coordinate
-     * @param sweepY (double): current sweep line y-coordinate to define arcs
-     * @return (Vector): xy-coordinate of current edge tail
+     * @param arc (int): an arc
+     * @return (CircleEvent): the circle event where the arc disappears, null if none
      */
-    private Vector getCurrentEdgeTail(BreakPoint bp, double sweepY) {
+    CircleEvent event(int arc){
+        return event[arc];
+    }
 
-        // Get the arc directly on left and on right of the breakpoint
-        Arc left = bp.getLeftArc();
-        Arc right = bp.getRightArc();
+    /**
+     * @param arc (int): an arc
+     * @param e (CircleEvent): the circle event where the arc disappears, null if none
+     */
+    void setEvent(int arc, CircleEvent e){
+        event[arc] = e;
+    }
 
-        // Get corresponding point sites
-        Vector l = left.cell.getP();
-        Vector r = right.cell.getP();
+    /**
+     * @param bp (int): a breakpoint
+     * @return (Dcel.HalfEdge): the half-edge of the cell on the left of the breakpoint
+     */
+    Dcel.HalfEdge leftEdge(int bp){
+        return leftEdge[bp];
+    }
 
-        double dp = 2*(l.y - sweepY);
-        double a1 = 1/dp;
-        double b1 = -2*l.x/dp;
-        double c1 = (l.x*l.x + l.y*l.y - sweepY*sweepY)/dp;
+    /**
+     * @param bp (int): a breakpoint
+     * @return (Dcel.HalfEdge): the half-edge of the cell on the right of the breakpoint
+     */
+    Dcel.HalfEdge rightEdge(int bp){
+        return rightEdge[bp];
+    }
 
-        double dp2 = 2*(r.y - sweepY);
-        double a2 = 1/dp2;
-        double b2 = -2*r.x/dp2;
-        double c2 = (r.x*r.x + r.y*r.y - sweepY*sweepY)/dp2;
+    /**
+     * Set the breakpoint
+     * @param bp (int): the breakpoint
+     * @param lc (int): the cell id of the arc on the left
+     * @param rc (int): the cell id of the arc on the right
+     * @param le (Dcel.HalfEdge): the half-edge of the left cell
+     * @param re (Dcel.HalfEdge): the half-edge of the right cell (twin of le)
+     */
+    void setBreakPoint(int bp, int lc, int rc, Dcel.HalfEdge le, Dcel.HalfEdge re){
+        leftCell[bp] = lc;
+        rightCell[bp] = rc;
+        leftEdge[bp] = le;
+        rightEdge[bp] = re;
+    }
 
-        double a = a2-a1;
-        double b = b2-b1;
-        double c = c2-c1;
 
-        double disc = b*b - 4*a*c;
-        double x1 = (-b + Math.sqrt(disc))/(2*a);
-        double x2 = (-b - Math.sqrt(disc))/(2*a);
+    /// Navigation
 
-        double x = (l.y > r.y) ? Math.min(x1, x2) : Math.max(x1, x2);
-        double y = bp.halfEdge.support.y(x);
-        return new Vector(x, y);
+    /**
+     * @param bp (int): a breakpoint
+     * @return (int): the closest arc on the left of the breakpoint
+     */
+    int leftArc(int bp){
+        int i = left[bp];
+        while(left[i] != NIL)
+            i = right[i];
+        return i;
     }
 
+    /**
+     * @param bp (int): a breakpoint
+     * @return (int): the closest arc on the right of the breakpoint
+     */
+    int rightArc(int bp){
+        int i = right[bp];
+        while(left[i] != NIL)
+            i = left[i];
+        return i;
+    }
 
     /**
-     * Determine the y value from given x and parabola defined by pi site
-     * @param pi (Vector): point site that define the parabola with sweepY
-     * @param x (double): x-coordinate for the y we are looking for
-     * @param sweepY (double): current sweep line y-coordinate to define arcs
-     * @return (double) the y-coordinate on (pi, sweepY)-parabola for given x-coordinate
+     * @param arc (int): an arc
+     * @return (int): the closest breakpoint on the left of the arc, NIL if none
      */
-    double getY(Vector pi, double x, double sweepY) {
-        double dp = 2*(pi.y - sweepY);
-        double a1 = 1/dp;
-        double b1 = -2*pi.x/dp;
-        double c1 = (pi.x*pi.x + pi.y*pi.y - sweepY*sweepY)/dp;
+    int leftBreakPoint(int arc){
+        int last = arc;
+        int p = parent[arc];
+        while(p != NIL && left[p] == last){
+            last = p;
+            p = parent[p];
+        }
+        return p;
+    }
 
-        return(a1*x*x + b1*x + c1);
+    /**
+     * @param arc (int): an arc
+     * @return (int): the closest breakpoint on the right of the arc, NIL if none
+     */
+    int rightBreakPoint(int arc){
+        int last = arc;
+        int p = parent[arc];
+        while(p != NIL && right[p] == last){
+            last = p;
+            p = parent[p];
+        }
+        return p;
     }
 
     /**
-     * Split the arc alpha into three new leaf introduced by the new point site
-     * Note: we replace alpha by a new sub tree structure
-     * @param alpha (Arc): the arc to split
-     * @param cell (VoronoiCell): the new point site cell
-     * @return (Arc[]): new Arc left [0] and new Arc right [1] that can induce circle events
+     * From the two breakpoints of an arc, determine which one is higher in the tree structure
+     * @param arc (int): the concerned arc
+     * @param bp1 (int): first breakpoint of given arc (an ancestor of it in the tree)
+     * @param bp2 (int): second breakpoint of given arc (an ancestor of it in the tree)
+     * @return (int): the highest breakpoint, either bp1 or bp2
      */
-    Arc[] split(Arc alpha, VoronoiCell cell){
+    int determineHigher(int arc, int bp1, int bp2){
+        if(parent[arc] == bp1) return bp2;
+        if(parent[arc] == bp2) return bp1;
+        throw new IllegalStateException();
+    }
 
-        Vector alphaP = alpha.cell.getP();
-        Vector cellP = cell.getP();
 
-        // - Store the tuple <pj, pi> and <pi, pj> representing the new breakpoints at the two new internal nodes.
-        // - Create new half-edge records in the Voronoi diagram structure for the edge separating V(pi) and V(pj),
-        //   which will be traced out by the two new breakpoints.
-        Vector start = new Vector(cellP.x, getY(alphaP, cellP.x, cellP.y));
-        Vector alphaPi = cellP.subtract(alphaP);
+    /// Geometry
 
-        HalfEdge el = new HalfEdge(start, new Vector(alphaPi.y, -alphaPi.x));
-        HalfEdge er = new HalfEdge(start, new Vector(-alphaPi.y, alphaPi.x));
+    /**
+     * Find the arc directly (vertically) above the given point (which is generally a new site)
+     * @param x (double): x-coordinate of the new site
+     * @param y (double): y-coordinate of the new site, i.e. the sweep line
+     * @return (int): the arc directly above (i.e. the arc to split)
+     */
+    int getArcAbove(double x, double y){
+        int i = root;
+        while(left[i] != NIL){
+            if(breakPointX(i, y) > x) i = left[i];
+            else i = right[i];
+        }
+        return i;
+    }
 
-        BreakPoint bp = new BreakPoint();
-        BreakPoint bpR = new BreakPoint();
-        bp.set(el, alpha.cell, cell);
-        bpR.set(er, cell, alpha.cell);
+    /**
+     * Compute the current x-coordinate of a breakpoint, i.e. the intersection of the parabolas of its two sites
+     * @param bp (int): the breakpoint
+     * @param sweepY (double): current sweep line y-coordinate to define arcs
+     * @return (double): the x-coordinate of the breakpoint
+     */
+    private double breakPointX(int bp, double sweepY){
+        int l = leftCell[bp], r = rightCell[bp];
+        return breakPointX(siteX[l], siteY[l], siteX[r], siteY[r], sweepY);
+    }
+
+    /**
+     * Compute the current x-coordinate of a breakpoint, i.e. of the intersection between the parabolas
+     * of the sites on its left and on its right.
+     * Only the x-coordinate is needed to descend the tree, hence nothing is allocated.
+     * @param lx (double): x-coordinate of the site on the left
+     * @param ly (double): y-coordinate of the site on the left
+     * @param rx (double): x-coordinate of the site on the right
+     * @param ry (double): y-coordinate of the site on the right
+     * @param sweepY (double): current sweep line y-coordinate to define arcs
+     * @return (double): the x-coordinate of the breakpoint
+     */
+    static double breakPointX(double lx, double ly, double rx, double ry, double sweepY) {
 
-        // Replace the leaf of the beach line that represents alpha with a subtree having three leaves.
-        // - The middle leaf stores the new site pi
-        // - The other two leaves store the site pj that was originally stored with alpha.
-        Arc aL = new Arc(alpha.cell);
-        Arc aM = new Arc(cell);
-        Arc aR = new Arc(alpha.cell);
+        // Both parabolas are (x^2 - 2 xi x + xi^2 + yi^2 - sweepY^2) / dpi: their difference, multiplied by dp*dp2,
+        // is the quadratic a x^2 + b x + c
+        double dp = 2*(ly - sweepY);
+        double dp2 = 2*(ry - sweepY);
+        double k = sweepY*sweepY;
 
-        bp.setLeftChild(aL);
-        bp.setRightChild(bpR);
+        double a = dp - dp2;
+        double b = 2*(lx*dp2 - rx*dp);
+        double c = (rx*rx + ry*ry - k)*dp - (lx*lx + ly*ly - k)*dp2;
 
-        bpR.setLeftChild(aM);
-        bpR.setRightChild(aR);
+        // Same y-coordinates (both sites may even be on the sweep line): the parabolas only cross on the bisector
+        if(a == 0)
+            return (lx + rx)/2;
 
-        // Replace alpha in the structure
-        if(alpha.parent != null){
-            if(alpha.equals(alpha.parent.childLeft)){
-                alpha.parent.setLeftChild(bp);
-            }
-            else{
-                alpha.parent.setRightChild(bp);
-            }
-        }else{
-            root = bp;
-        }
+        // Roots without cancellation: one from q = -(b + sign(b) sqrt(disc))/2, the other from the product c/a
+        double disc = Math.sqrt(Math.max(0, b*b - 4*a*c));
+        double q = -(b + Math.copySign(disc, b))/2;
+        double x1 = q/a;
+        double x2 = q != 0 ? c/q : x1;
 
-        return new Arc[]{aL, aR};
+        return (ly > ry) ? Math.min(x1, x2) : Math.max(x1, x2);
     }
 
+    /// Structure updates
 
     /**
-     * Ends all the half-edges left into the beach line
-     * Note: this function is the entry point of a recursive call
-     * @return (List of Edge): the list of ended edges
+     * Split the arc alpha into three new leaf introduced by the new point site
+     * @param alpha (int): the arc to split (released by the split)
+     * @param cell (int): the new point site cell id
+     * @param edge (Dcel.HalfEdge): the half-edge of alpha cell (its twin being of the new cell) traced out by the breakpoints
+     * @return (int[]): new arc left [0] and new arc right [1] that can induce circle events
+     * Note: the returned array is reused by the next split
      */
-    List<Edge> endEdges(){
-        List<Edge> edges = new ArrayList<>();
-        root.endEdges(edges);
-        return edges;
-    }
-
+    int[] split(int alpha, int cell, Dcel.HalfEdge edge){
 
-    /// The binary tree structure
+        int alphaCell = leftCell[alpha];
 
-    /** Abstract Node of the tree, defined by parent, childLeft and childRight */
-    private abstract class Node {
+        // The two new breakpoints trace out the bisector of the two sites in opposite directions
+        int bp = newNode();
+        int bpR = newNode();
+        setBreakPoint(bp, alphaCell, cell, edge, edge.twin);
+        setBreakPoint(bpR, cell, alphaCell, edge.twin, edge);
 
-        /// Node pointer on tree structure
-        Node parent;
-        Node childLeft;
-        Node childRight;
+        int aL = newNode();
+        int aM = newNode();
+        int aR = newNode();
+        leftCell[aL] = alphaCell;
+        leftCell[aM] = cell;
+        leftCell[aR] = alphaCell;
 
-        /**
-         * Set the left child of this with given node
-         * @param p (Node): the new left child
-         */
-        void setLeftChild (Node p) {
-            childLeft = p;
-            if(p!=null)
-                p.parent = this;
-        }
+        setLeft(bp, aL);
+        setRight(bp, bpR);
+        setLeft(bpR, aM);
+        setRight(bpR, aR);
 
-        /**
-         * Set the right child of this with given node
-         * @param p (Node): the new right child
-         */
-        void setRightChild (Node p) {
-            childRight = p;
-            if(p!=null)
-                p.parent = this;
-        }
-
-        /**
-         * Ends all the half-edges left into the beach line
-         * Note: this function is recursive call through the tree
-         * @param edges (List of Edge): the list of ended edges (the same pointer though recursion level)
-         */
-        void endEdges(List<Edge> edges) {
-
-            // recursive stop condition
-            if(this instanceof Arc) {
-                return;
-            }
-            BreakPoint bp = (BreakPoint) this;
-
-            Vector[] intersections = bp.halfEdge.intersectWith(box);
-            if(intersections.length > 0){
-                if(box.contains(bp.halfEdge.head)) {
-                    Edge e = new Edge(bp.halfEdge.head, intersections[0]);
-                    edges.add(e);
-                    bp.right.addEdge(e);
-                    bp.left.addEdge(e);
-                }
-            }
-            // Recursive call
-            bp.childLeft.endEdges(edges);
-            bp.childRight.endEdges(edges);
+        // Replace alpha in the structure
+        int p = parent[alpha];
+        if(p == NIL){
+            root = bp;
+            parent[bp] = NIL;
         }
+        else if(left[p] == alpha)
+            setLeft(p, bp);
+        else
+            setRight(p, bp);
+        release(alpha);
+
+        // Perform re-balancing operations from the new lowest breakpoint
+        updateHeight(bpR);
+        rebalance(bp);
+
+        split[0] = aL;
+        split[1] = aR;
+        return split;
     }
 
-    /** BreakPoint Node of the tree, defined with the uncompleted half-edge */
-    public class BreakPoint extends Node{
-
-        /// Half-edge linked to the node
-        private HalfEdge halfEdge;
-        VoronoiCell left, right;
+    /**
+     * Insert the arc of a new site on the right of the arc alpha, both sites having the same y-coordinate
+     * (i.e. the first sites of the sweep are on the same horizontal line):
+     * the parabola of alpha is degenerated into a vertical half-line, hence it is not split but only
+     * bounded on its right by a single breakpoint tracing out the vertical bisector of both sites.
+     * @param alpha (int): the arc on the left
+     * @param cell (int): the new point site cell id, on the right of alpha
+     * @param edge (Dcel.HalfEdge): the half-edge of alpha cell (its twin being of the new cell) traced out by the breakpoint
+     * @return (int): the new arc
+     */
+    int append(int alpha, int cell, Dcel.HalfEdge edge){
+
+        int bp = newNode();
+        setBreakPoint(bp, leftCell[alpha], cell, edge, edge.twin);
+        int arc = newNode();
+        leftCell[arc] = cell;
+
+        replace(alpha, bp);
+        setLeft(bp, alpha);
+        setRight(bp, arc);
+        rebalance(bp);
+        return arc;
+    }
 
-        void set(HalfEdge halfEdge, VoronoiCell left, VoronoiCell right){
-            this.halfEdge = halfEdge;
-            this.left = left;
-            this.right = right;
+    /**
+     * Remove an arc from the beach line, together with its lowest breakpoint
+     * @param arc (int): the arc to remove
+     */
+    void remove(int arc){
+        int p = parent[arc];
+        if(p == NIL){
+            root = NIL;
+            release(arc);
+            return;
         }
-
-        Vector halfEdgeHead(){
-            return halfEdge.head;
+        int sibling = left[p] == arc ? right[p] : left[p];
+        int grandParent = parent[p];
+        if(grandParent == NIL){
+            root = sibling;
+            parent[sibling] = NIL;
         }
-
-        Vector[] intersectWith(BreakPoint other){
-            return halfEdge.intersectWith(other.halfEdge);
+        else {
+            if(left[grandParent] == p) setLeft(grandParent, sibling);
+            else setRight(grandParent, sibling);
+            rebalance(grandParent);
         }
+        release(arc);
+        release(p);
+    }
 
 
-        /**
-         * Given a break point, it compute the closest arc to the left
-         * @return (Arc): the closest left Arc
-         */
-        Arc getLeftArc() {
-            Node bp = childLeft;
-            while(!(bp instanceof Arc))
-                bp = bp.childRight;
-            return (Arc) bp;
-        }
+    /// Re-balancing operations (AVL)
 
-        /**
-         * Given a break point, it compute the closest arc to the right
-         * @return (Arc): the closest right Arc
-         */
-        Arc getRightArc() {
-            Node bp = childRight;
-            while(!(bp instanceof Arc))
-                bp = bp.childLeft;
-            return (Arc) bp;
-        }
+    /**
+     * @param i (int): the new parent
+     * @param c (int): the new left child
+     */
+    private void setLeft(int i, int c){
+        left[i] = c;
+        parent[c] = i;
+    }
 
-        @Override
-        public String toString() {
-            return "BreakPoint{" +
-                    "halfEdge=" + halfEdge +
-                    '}';
-        }
+    /**
+     * @param i (int): the new parent
+     * @param c (int): the new right child
+     */
+    private void setRight(int i, int c){
+        right[i] = c;
+        parent[c] = i;
     }
 
-    /** Arc Leaf of the tree, defined with the point of interest and the linked event if CIRCLE_EVENT*/
-    public class Arc extends Node {
+    /**
+     * Recompute the height of a node from the heights of its children
+     * @param i (int): the node
+     */
+    private void updateHeight(int i){
+        if(left[i] != NIL)
+            height[i] = 1 + Math.max(height[left[i]], height[right[i]]);
+    }
 
-        final VoronoiCell cell;
-        Event event;
+    /**
+     * @param i (int): the node
+     * @return (int): the AVL balance factor, i.e. left subtree height minus right subtree height
+     */
+    private int balance(int i){
+        if(left[i] == NIL)
+            return 0;
+        return height[left[i]] - height[right[i]];
+    }
 
-        /**
-         * Default Arc Constructor
-         * @param cell (VoronoiCell): the point of interest linked to this leaf.
-         */
-        Arc(VoronoiCell cell){
-            this.cell = cell;
-        }
+    /**
+     * Update the heights and restore the AVL property from the given node up to the root
+     * Note: do nothing if the beach line is not balanced
+     * @param i (int): the lowest node whose subtree has changed
+     */
+    private void rebalance(int i){
+        if(!balanced)
+            return;
 
-        /**
-         * Given an Arc , it compute the closest right parent (BreakPoint)
-         * @return (BreakPoint): the closest right BreakPoint
-         */
-        BreakPoint getRightBreakPoint() {
-            Node parent = this.parent;
-            if (parent == null) return null;
-            Node last = this;
-            while (parent.childRight == last) {
-                last = parent;
-                parent = parent.parent;
-                if(parent == null) return null;
-            }
-            return (BreakPoint) parent;
-        }
+        while(i != NIL){
+            updateHeight(i);
+            int balance = balance(i);
 
-        /**
-         * Given an Arc , it compute the closest right parent (BreakPoint)
-         * @return (BreakPoint): the closest right BreakPoint
-         */
-        BreakPoint getLeftBreakPoint() {
-            Node parent = this.parent;
-            if (parent == null) return null;
-            Node last = this;
-            while (parent.childLeft == last) {
-                last = parent;
-                parent = parent.parent;
-                if(parent == null) return null;
+            if(balance > 1){
+                if(balance(left[i]) < 0)
+                    rotateLeft(left[i]);
+                i = rotateRight(i);
             }
-            return (BreakPoint) parent;
+            else if(balance < -1){
+                if(balance(right[i]) > 0)
+                    rotateRight(right[i]);
+                i = rotateLeft(i);
+            }
+            i = parent[i];
         }
+    }
 
+    /**
+     * Replace the given node by its right child which becomes the new subtree root
+     * @param x (int): the subtree root to rotate
+     * @return (int): the new subtree root
+     */
+    private int rotateLeft(int x){
+        int y = right[x];
+        replace(x, y);
+        setRight(x, left[y]);
+        setLeft(y, x);
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
 
-        @Override
-        public String toString() {
-            return "Arc{" +
-                    "cell=" + cell +
-                    ", event=" + event +
-                    '}';
+    /**
+     * Replace the given node by its left child which becomes the new subtree root
+     * @param x (int): the subtree root to rotate
+     * @return (int): the new subtree root
+     */
+    private int rotateRight(int x){
+        int y = left[x];
+        replace(x, y);
+        setLeft(x, right[y]);
+        setRight(y, x);
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
+
+    /**
+     * Put the node y at the place of the node x into the x parent (or as root)
+     * @param x (int): the node to replace
+     * @param y (int): the replacing node
+     */
+    private void replace(int x, int y){
+        int p = parent[x];
+        if(p == NIL){
+            root = y;
+            parent[y] = NIL;
         }
+        else if(left[p] == x)
+            setLeft(p, y);
+        else
+            setRight(p, y);
     }
 }
@@ -10,25 +10,42 @@ import blchatel.polygonmap.geometry2d.Vector;
  */
 public class CircleEvent implements Event{
 
-    /// Linked point of interest
-    private final Vector p;
-    /// Concerned arc if circle event
-    final BeachLine.Arc arc;
+    /// Linked point of interest, kept as coordinates such that a recycled event allocates nothing
+    private double x, y;
+    /// Radius of the circle: the center, i.e. the new diagram vertex, is right above p
+    double radius;
+    /// Concerned arc: its node into the beach line
+    int node;
+    /// Position of this event into an indexed event queue (-1 if not queued)
+    int index = -1;
 
     /**
      * Default CircleEvent Constructor
-     * @param p (Vector): event point of interest: bottom most circle point (CIRCLE_EVENT)
-     * @param arc (Arc): event concerned arc
+     * @param x (double): x-coordinate of the event point of interest: bottom most circle point (CIRCLE_EVENT)
+     * @param y (double): y-coordinate of the event point of interest
+     * @param node (int): event concerned arc
      */
-    CircleEvent (Vector p, BeachLine.Arc arc) {
-        this.p = p;
-        this.arc = arc;
+    CircleEvent (double x, double y, int node) {
+        set(x, y, node);
+    }
+
+    /**
+     * Reuse this event for another circle
+     * @param x (double): x-coordinate of the event point of interest: bottom most circle point (CIRCLE_EVENT)
+     * @param y (double): y-coordinate of the event point of interest
+     * @param node (int): event concerned arc
+     */
+    void set(double x, double y, int node){
+        this.x = x;
+        this.y = y;
+        this.node = node;
+        this.index = -1;
     }
 
 
     @Override
     public String toString() {
-        return "CircleEvent[p = " + p +']';
+        return "CircleEvent[p = " + getP() +']';
     }
 
 
@@ -36,6 +53,16 @@ public class CircleEvent implements Event{
 
     @Override
     public Vector getP() {
-        return p;
+        return new Vector(x, y);
+    }
+
+    @Override
+    public double getX() {
+        return x;
+    }
+
+    @Override
+    public double getY() {
+        return y;
     }
 }
@@ -0,0 +1,295 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Frozen snapshot of a bounded Voronoi diagram, stored in primitive arrays indexed by int
+ * - The vertices are shared by the cells (one for each vertex record of the diagram) and stored in two coordinate arrays
+ * - The topology is stored in compressed sparse row (CSR) form: the vertices of cell c are
+ *   cellVertices[cellStart[c]] to cellVertices[cellStart[c+1]-1] in counter-clockwise order,
+ *   and its neighbor cells are given in the same way by neighborStart and neighbors
+ * - The sites, areas, perimeters and centroids of the cells are stored in per-cell arrays
+ * The cells keep the order of the diagram cells (i.e. of the given sites).
+ * The snapshot is immutable: all its fields are final and its arrays are never exposed, hence it can be
+ * shared across threads without any locking, and it stays valid when the diagram is reset or dropped
+ * @see VoronoiDiagram
+ * @see VoronoiCell
+ */
+public final class CompactVoronoi {
+
+    /// Size in bytes of an object header, of an array header and of a reference, and alignment of the objects
+    /// (64-bit JVM with compressed oops)
+    private static final int OBJECT_HEADER = 12, ARRAY_HEADER = 16, REFERENCE = 4, ALIGNMENT = 8;
+
+    /// Coordinates of the vertices
+    private final double[] vertexX, vertexY;
+    /// Cell to vertex CSR arrays
+    private final int[] cellStart, cellVertices;
+    /// Cell to neighbor CSR arrays
+    private final int[] neighborStart, neighbors;
+    /// Per-cell site, area, perimeter and centroid
+    private final double[] siteX, siteY;
+    private final double[] area, perimeter;
+    private final double[] centroidX, centroidY;
+
+    /**
+     * Take a snapshot of a diagram
+     * @param diagram (VoronoiDiagram): the bounded diagram, of any engine
+     */
+    public CompactVoronoi(VoronoiDiagram diagram){
+
+        List<VoronoiCell> cells = diagram.getCells();
+        int n = cells.size();
+        Map<VoronoiCell, Integer> index = new IdentityHashMap<>(2*n);
+        for(int c = 0; c < n; c++)
+            index.put(cells.get(c), c);
+
+        // The vertex records are shared by the incident cells whatever the engine, hence numbered by identity
+        Map<Dcel.Vertex, Integer> numbers = new IdentityHashMap<>(4*n);
+        PointArray points = new PointArray(2*n + 4);
+        int[] vertices = new int[6*n], adjacent = new int[6*n];
+        int m = 0, a = 0;
+        cellStart = new int[n+1];
+        neighborStart = new int[n+1];
+        siteX = new double[n];
+        siteY = new double[n];
+        area = new double[n];
+        perimeter = new double[n];
+        centroidX = new double[n];
+        centroidY = new double[n];
+
+        int[] ring = new int[16], faces = new int[16];
+        for(int c = 0; c < n; c++){
+            VoronoiCell cell = cells.get(c);
+
+            // Vertex and neighbor (-1 on the boundary) of each half-edge along the cell boundary
+            int k = 0;
+            Dcel.HalfEdge h = cell.getEdge();
+            do {
+                if(k == ring.length){
+                    ring = Arrays.copyOf(ring, 2*k);
+                    faces = Arrays.copyOf(faces, 2*k);
+                }
+                if(h.origin == null)
+                    throw new IllegalArgumentException("The diagram is not bounded");
+                Integer number = numbers.get(h.origin);
+                if(number == null){
+                    number = points.size();
+                    numbers.put(h.origin, number);
+                    points.add(h.origin.x, h.origin.y);
+                }
+                ring[k] = number;
+                int face = -1;
+                if(h.twin != null){
+                    Integer neighbor = index.get(h.twin.face);
+                    if(neighbor == null)
+                        throw new IllegalArgumentException("A neighbor of the cell " + c + " is not a cell of the diagram");
+                    face = neighbor;
+                }
+                faces[k++] = face;
+                h = h.next;
+                // An open ring: the cell is not closed by the box
+                if(h == null || h.face != cell)
+                    throw new IllegalArgumentException("The diagram is not bounded");
+            } while(h != cell.getEdge());
+
+            // The edges of null length (e.g. between the circumcenters of cocircular sites) are neither boundary
+            // segments nor adjacencies
+            if(vertices.length < m + k)
+                vertices = Arrays.copyOf(vertices, Math.max(m + k, 2*m));
+            if(adjacent.length < a + k)
+                adjacent = Arrays.copyOf(adjacent, Math.max(a + k, 2*a));
+            int first = m;
+            for(int i = 0; i < k; i++){
+                int next = ring[i == k-1 ? 0 : i+1];
+                if(points.x(ring[i]) == points.x(next) && points.y(ring[i]) == points.y(next))
+                    continue;
+                vertices[m++] = ring[i];
+                if(faces[i] >= 0)
+                    adjacent[a++] = faces[i];
+            }
+            if(m == first)
+                throw new IllegalArgumentException("The diagram is not bounded");
+            cellStart[c+1] = m;
+            neighborStart[c+1] = a;
+
+            Vector site = cell.getP();
+            Vector center = cell.center();
+            siteX[c] = site.x;
+            siteY[c] = site.y;
+            // VoronoiCell.surface gives the double area
+            area[c] = cell.surface() / 2;
+            perimeter[c] = cell.perimeter();
+            centroidX[c] = center.x;
+            centroidY[c] = center.y;
+        }
+
+        cellVertices = Arrays.copyOf(vertices, m);
+        neighbors = Arrays.copyOf(adjacent, a);
+        vertexX = Arrays.copyOf(points.xs(), points.size());
+        vertexY = Arrays.copyOf(points.ys(), points.size());
+    }
+
+
+    /// Vertices
+
+    /** @return (int): the number of vertices */
+    public int vertexCount(){
+        return vertexX.length;
+    }
+
+    /**
+     * @param v (int): the vertex index
+     * @return (double): the x-coordinate of the vertex
+     */
+    public double vertexX(int v){
+        return vertexX[v];
+    }
+
+    /**
+     * @param v (int): the vertex index
+     * @return (double): the y-coordinate of the vertex
+     */
+    public double vertexY(int v){
+        return vertexY[v];
+    }
+
+
+    /// Cells
+
+    /** @return (int): the number of cells */
+    public int cellCount(){
+        return siteX.length;
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (int): the number of vertices of the cell
+     */
+    public int cellVertexCount(int c){
+        return cellStart[c+1] - cellStart[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @param k (int): the rank of the vertex along the cell boundary (counter-clockwise)
+     * @return (int): the index of the vertex
+     */
+    public int cellVertex(int c, int k){
+        return cellVertices[cellStart[c] + k];
+    }
+
+    /**
+     * Append the vertices of a cell
+     * @param c (int): the cell index
+     * @param out (PointArray): output array, receiving the vertices in counter-clockwise order
+     */
+    public void cellPolygon(int c, PointArray out){
+        out.ensureCapacity(out.size() + cellVertexCount(c));
+        for(int i = cellStart[c]; i < cellStart[c+1]; i++)
+            out.add(vertexX[cellVertices[i]], vertexY[cellVertices[i]]);
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (int): the number of neighbors of the cell
+     */
+    public int neighborCount(int c){
+        return neighborStart[c+1] - neighborStart[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @param k (int): the rank of the neighbor around the cell (counter-clockwise)
+     * @return (int): the index of the neighbor cell
+     */
+    public int neighbor(int c, int k){
+        return neighbors[neighborStart[c] + k];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the x-coordinate of the cell site
+     */
+    public double siteX(int c){
+        return siteX[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the y-coordinate of the cell site
+     */
+    public double siteY(int c){
+        return siteY[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the area of the cell (unlike VoronoiCell.surface, not doubled)
+     */
+    public double area(int c){
+        return area[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the perimeter of the cell
+     */
+    public double perimeter(int c){
+        return perimeter[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the x-coordinate of the cell centroid
+     */
+    public double centroidX(int c){
+        return centroidX[c];
+    }
+
+    /**
+     * @param c (int): the cell index
+     * @return (double): the y-coordinate of the cell centroid
+     */
+    public double centroidY(int c){
+        return centroidY[c];
+    }
+
+
+    /// Footprint
+
+    /**
+     * Measure the memory retained by the snapshot, from the actual lengths of its arrays
+     * (64-bit JVM with compressed oops: 16 bytes of array header, objects aligned on 8 bytes)
+     * @return (long): the size in bytes of the snapshot and its arrays
+     */
+    public long bytes(){
+        long bytes = align(OBJECT_HEADER + 12 * REFERENCE);
+        for(double[] array : new double[][]{vertexX, vertexY, siteX, siteY, area, perimeter, centroidX, centroidY})
+            bytes += align(ARRAY_HEADER + 8L * array.length);
+        for(int[] array : new int[][]{cellStart, cellVertices, neighborStart, neighbors})
+            bytes += align(ARRAY_HEADER + 4L * array.length);
+        return bytes;
+    }
+
+    /** @return (double): the memory retained by the snapshot divided by its number of cells */
+    public double bytesPerCell(){
+        return (double)bytes() / Math.max(1, cellCount());
+    }
+
+    /**
+     * Round a size up to the object alignment
+     * @param size (long): the size in bytes
+     * @return (long): the aligned size
+     */
+    private static long align(long size){
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
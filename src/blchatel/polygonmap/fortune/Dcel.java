@@ -0,0 +1,544 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Intersections;
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.PointSet;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Doubly-connected edge list of the Voronoi diagram following section 2.2 from :
+ * De Berg, Mark, et al. "Computational geometry." Computational geometry. Springer, Berlin, Heidelberg, 1997. 1-17.
+ * - Each Voronoi edge is a pair of twin half-edges, one for each cell it separates
+ * - Each half-edge knows its origin vertex, its twin, the next and previous half-edges of its face
+ * - The faces are the Voronoi cells and are on the left of their half-edges (counter-clockwise order)
+ * The list is built by the Fortune sweep, then bounded by a convex polygon (e.g. a box) which closes the boundary cells.
+ * The vertices and half-edges are taken from pools which are recycled when the list is cleared.
+ * @see Voronoi
+ * @see VoronoiCell
+ */
+public final class Dcel {
+
+    /// The vertices and the half-edges (both twins, including the box boundary ones)
+    private final List<Vertex> vertices;
+    private final List<HalfEdge> halfEdges;
+    /// One half-edge of each pair of twins
+    private final List<HalfEdge> edges;
+
+    /// Pools of records and number of records in use
+    private final List<Vertex> vertexPool;
+    private final List<HalfEdge> halfEdgePool;
+    private int vertexCount, halfEdgeCount;
+    /// Mark of the records reached by the last compaction
+    private int stamp;
+    /// Working lists of the compaction and of the bounding
+    private final List<HalfEdge> kept;
+    private final List<Vertex> free;
+    private final List<HalfEdge> exits;
+    /// Output slots of the clipping: the parameter bounds and the polygon sides they lie on
+    private final double[] clipped;
+    /// Curvilinear abscissa of the corners of the clipping polygon along its boundary, and their vertices
+    private double[] borders;
+    private Vertex[] corners;
+    /// Welding of the vertices: positions and representative vertex of each welded position
+    private final PointSet welding;
+    private final List<Vertex> welded;
+
+    /**
+     * Create an empty doubly-connected edge list
+     * @param capacity (int): the expected number of sites
+     */
+    Dcel(int capacity){
+        vertices = new ArrayList<>(2*capacity);
+        halfEdges = new ArrayList<>(6*capacity);
+        edges = new ArrayList<>(3*capacity);
+        vertexPool = new ArrayList<>(2*capacity);
+        halfEdgePool = new ArrayList<>(6*capacity);
+        kept = new ArrayList<>(3*capacity);
+        free = new ArrayList<>();
+        exits = new ArrayList<>();
+        clipped = new double[4];
+        borders = new double[5];
+        corners = new Vertex[4];
+        welding = new PointSet(Vector.EPSILON, 2*capacity);
+        welded = new ArrayList<>(2*capacity);
+    }
+
+    /** Empty the list and recycle all its records */
+    void clear(){
+        vertices.clear();
+        halfEdges.clear();
+        edges.clear();
+        vertexCount = 0;
+        halfEdgeCount = 0;
+    }
+
+    /**
+     * Create and register a new vertex
+     * @param x (double): x-coordinate of the vertex position
+     * @param y (double): y-coordinate of the vertex position
+     * @return (Vertex): the new vertex
+     */
+    Vertex createVertex(double x, double y){
+        Vertex v;
+        if(vertexCount < vertexPool.size())
+            v = vertexPool.get(vertexCount);
+        else {
+            v = new Vertex();
+            vertexPool.add(v);
+        }
+        vertexCount++;
+        v.x = x;
+        v.y = y;
+        v.incident = null;
+        v.border = -1;
+        vertices.add(v);
+        return v;
+    }
+
+    /**
+     * Create and register the twin half-edges of a new edge between two cells
+     * Note: the origins are unknown (i.e. at infinity) until the sweep finds the edge ends
+     * @param left (VoronoiCell): the face of the returned half-edge
+     * @param right (VoronoiCell): the face of the twin half-edge
+     * @return (HalfEdge): the half-edge of the left cell
+     */
+    HalfEdge createEdge(VoronoiCell left, VoronoiCell right){
+        HalfEdge h = createHalfEdge(left);
+        HalfEdge twin = createHalfEdge(right);
+        h.twin = twin;
+        twin.twin = h;
+        edges.add(h);
+        return h;
+    }
+
+    /**
+     * Create and register a single half-edge (i.e. without twin)
+     * @param face (VoronoiCell): the face of the half-edge
+     * @return (HalfEdge): the new half-edge
+     */
+    HalfEdge createHalfEdge(VoronoiCell face){
+        HalfEdge h;
+        if(halfEdgeCount < halfEdgePool.size())
+            h = halfEdgePool.get(halfEdgeCount);
+        else {
+            h = new HalfEdge();
+            halfEdgePool.add(h);
+        }
+        halfEdgeCount++;
+        h.face = face;
+        h.origin = null;
+        h.twin = h.next = h.prev = null;
+        halfEdges.add(h);
+        if(face.edge == null)
+            face.edge = h;
+        return h;
+    }
+
+    /**
+     * Register again the records reachable from the given cells, after cells were rebuilt locally:
+     * the records which are not reachable anymore are recycled by the next creations
+     * @param cells (Collection of VoronoiCell): all the cells of the diagram
+     */
+    void compact(Collection<VoronoiCell> cells){
+        stamp++;
+        vertices.clear();
+        halfEdges.clear();
+        edges.clear();
+        for(VoronoiCell cell : cells){
+            HalfEdge h = cell.edge;
+            do {
+                h.stamp = stamp;
+                halfEdges.add(h);
+                if(h.twin != null && h.face.id < h.twin.face.id)
+                    edges.add(h);
+                if(h.origin.stamp != stamp){
+                    h.origin.stamp = stamp;
+                    vertices.add(h.origin);
+                }
+                h = h.next;
+            } while(h != cell.edge);
+        }
+
+        // The reachable records first, then the free ones
+        kept.clear();
+        for(HalfEdge h : halfEdgePool)
+            if(h.stamp != stamp)
+                kept.add(h);
+        halfEdgePool.clear();
+        halfEdgePool.addAll(halfEdges);
+        halfEdgePool.addAll(kept);
+        halfEdgeCount = halfEdges.size();
+        kept.clear();
+
+        free.clear();
+        for(Vertex v : vertexPool)
+            if(v.stamp != stamp)
+                free.add(v);
+        vertexPool.clear();
+        vertexPool.addAll(vertices);
+        vertexPool.addAll(free);
+        vertexCount = vertices.size();
+        free.clear();
+    }
+
+    /**
+     * Make two single half-edges twins, the first one being registered as the edge of the pair
+     * @param h (HalfEdge): the first half-edge
+     * @param twin (HalfEdge): its twin
+     */
+    void twin(HalfEdge h, HalfEdge twin){
+        h.twin = twin;
+        twin.twin = h;
+        edges.add(h);
+    }
+
+    /**
+     * Link two consecutive half-edges of the same face
+     * @param prev (HalfEdge): the previous half-edge
+     * @param next (HalfEdge): the next half-edge
+     */
+    static void link(HalfEdge prev, HalfEdge next){
+        prev.next = next;
+        next.prev = prev;
+    }
+
+
+    /// Bounding
+
+    /**
+     * Clip the diagram by a convex polygon and close the boundary cells along the polygon boundary
+     * - Each edge is clipped (Cyrus-Beck, i.e. Liang-Barsky for a box), the edges out of the polygon are dropped
+     *   and a vertex is created where an edge crosses the polygon boundary
+     * - The crossing points are sorted along the polygon perimeter (counter-clockwise) and walked once,
+     *   together with the polygon corners: between two consecutive crossing points, the boundary belongs to
+     *   a single cell, the one which leaves the polygon at the first point and enters it back at the second
+     * The cost is linear in the number of edges plus the sort of the crossing points, without any per edge allocation
+     * Note: the sites must lie into the polygon
+     * @param polygon (PointArray): the vertices of the convex clipping polygon, in counter-clockwise order
+     * @param cells (Collection of VoronoiCell): all the cells of the diagram
+     */
+    void bound(PointArray polygon, Collection<VoronoiCell> cells){
+
+        weld();
+
+        // Curvilinear abscissa of the corners along the boundary, from the first one
+        int n = polygon.size();
+        if(borders.length < n+1)
+            borders = new double[n+1];
+        for(int k = 0; k < n; k++){
+            int l = k == n-1 ? 0 : k+1;
+            double dx = polygon.x(l) - polygon.x(k), dy = polygon.y(l) - polygon.y(k);
+            borders[k+1] = borders[k] + Math.sqrt(dx*dx + dy*dy);
+        }
+        double perimeter = borders[n];
+
+        // Clip the edges and collect the half-edges leaving the polygon
+        kept.clear();
+        exits.clear();
+        for(HalfEdge h : edges){
+            if(!clip(h, polygon))
+                continue;
+            kept.add(h);
+            if(h.twin.origin.border >= 0) exits.add(h);
+            if(h.origin.border >= 0) exits.add(h.twin);
+        }
+        edges.clear();
+        edges.addAll(kept);
+        halfEdges.clear();
+        for(HalfEdge h : kept){
+            halfEdges.add(h);
+            halfEdges.add(h.twin);
+            h.face.edge = h;
+            h.twin.face.edge = h.twin;
+        }
+
+        // The polygon corners, in counter-clockwise order
+        if(corners.length < n)
+            corners = new Vertex[n];
+        for(int k = 0; k < n; k++){
+            corners[k] = createVertex(polygon.x(k), polygon.y(k));
+            corners[k].border = borders[k];
+        }
+
+        // A single cell covers the whole polygon
+        if(exits.isEmpty()){
+            for(VoronoiCell cell : cells){
+                HalfEdge first = null, last = null;
+                for(int k = 0; k < n; k++){
+                    HalfEdge h = createHalfEdge(cell);
+                    h.origin = corners[k];
+                    if(first == null) first = h; else link(last, h);
+                    last = h;
+                }
+                link(last, first);
+                cell.edge = first;
+            }
+        }
+
+        // Single ordered walk along the polygon boundary: the crossing points are sorted, hence the corners
+        // (numbered over two turns, the last part of the boundary wrapping around the first corner) only go forward
+        exits.sort((h1, h2) -> Double.compare(h1.twin.origin.border, h2.twin.origin.border));
+        int k = 0;
+        for(int i = 0; i < exits.size(); i++){
+            HalfEdge exit = exits.get(i);
+            HalfEdge entry = exits.get((i+1) % exits.size()).twin;
+            double from = exit.twin.origin.border;
+            double to = entry.origin.border;
+            if(to <= from)
+                to += perimeter;
+
+            // Follow the boundary from the exit point to the entry point, through the corners in between
+            while(k < 2*n && borders[k % n] + (k / n) * perimeter <= from)
+                k++;
+            HalfEdge last = exit;
+            Vertex origin = exit.twin.origin;
+            for(; k < 2*n && borders[k % n] + (k / n) * perimeter < to; k++){
+                HalfEdge h = createHalfEdge(exit.face);
+                h.origin = origin;
+                link(last, h);
+                last = h;
+                origin = corners[k % n];
+            }
+            HalfEdge h = createHalfEdge(exit.face);
+            h.origin = origin;
+            link(last, h);
+            link(h, entry);
+        }
+
+        // Only keep the vertices into the polygon
+        vertices.clear();
+        for(HalfEdge h : halfEdges){
+            if(h.origin.incident == null){
+                h.origin.incident = h;
+                vertices.add(h.origin);
+            }
+        }
+    }
+
+    /**
+     * Weld the vertices closer than Vector.EPSILON, e.g. the ones of several circle events around cocircular sites,
+     * such that the incident cells share a single vertex, and drop the edges collapsed by the welding
+     */
+    private void weld(){
+        welding.clear();
+        welded.clear();
+        for(Vertex v : vertices){
+            v.index = welding.add(v.x, v.y);
+            if(v.index == welded.size())
+                welded.add(v);
+        }
+        if(welded.size() == vertices.size())
+            return;
+
+        for(HalfEdge h : halfEdges)
+            if(h.origin != null)
+                h.origin = welded.get(h.origin.index);
+        kept.clear();
+        for(HalfEdge h : edges){
+            if(h.origin != null && h.origin == h.twin.origin){
+                unlink(h);
+                unlink(h.twin);
+            }
+            else
+                kept.add(h);
+        }
+        edges.clear();
+        edges.addAll(kept);
+        vertices.clear();
+        vertices.addAll(welded);
+    }
+
+    /**
+     * Remove a half-edge from the boundary of its face
+     * @param h (HalfEdge): the half-edge to remove
+     */
+    private static void unlink(HalfEdge h){
+        if(h.prev != null)
+            h.prev.next = h.next;
+        if(h.next != null)
+            h.next.prev = h.prev;
+        if(h.face.edge == h)
+            h.face.edge = h.next != null ? h.next : h.prev;
+    }
+
+    /**
+     * Clip the edge of the given half-edge (and its twin) by the polygon (Intersections.clip)
+     * The edge lies on the bisector of the two cell sites, which is parameterized from the middle of the sites:
+     * unlike a vertex, which is very far for nearly collinear sites, the middle lies into the polygon, hence the
+     * crossing points are accurate. The infinite ends are followed along the bisector.
+     * The ends out of the polygon are replaced by new vertices on the polygon boundary.
+     * @param h (HalfEdge): the half-edge to clip
+     * @param polygon (PointArray): the convex clipping polygon
+     * @return (boolean): true if a part of the edge lies into the polygon, false otherwise
+     */
+    private boolean clip(HalfEdge h, PointArray polygon){
+
+        Vertex o = h.origin;
+        Vertex d = h.twin.origin;
+        Vector a = h.face.getP();
+        Vector b = h.twin.face.getP();
+
+        // Parametric support p + t*u for t0 <= t <= t1, the face of h is on the left of u
+        double px = (a.x + b.x)/2, py = (a.y + b.y)/2;
+        double ux = a.y - b.y, uy = b.x - a.x;
+        double uu = ux*ux + uy*uy;
+        double t0 = o != null ? ((o.x - px)*ux + (o.y - py)*uy) / uu : Double.NEGATIVE_INFINITY;
+        double t1 = d != null ? ((d.x - px)*ux + (d.y - py)*uy) / uu : Double.POSITIVE_INFINITY;
+
+        if(!Intersections.clip(px, py, ux, uy, t0, t1, polygon, clipped))
+            return false;
+
+        t0 = clipped[0];
+        t1 = clipped[1];
+        if(clipped[2] >= 0)
+            h.origin = borderVertex(polygon, (int)clipped[2], px + t0*ux, py + t0*uy);
+        if(clipped[3] >= 0)
+            h.twin.origin = borderVertex(polygon, (int)clipped[3], px + t1*ux, py + t1*uy);
+        return true;
+    }
+
+    /**
+     * Create a vertex on the polygon boundary
+     * @param polygon (PointArray): the polygon
+     * @param side (int): the polygon side, from the corner side to the next one
+     * @param x (double): the x-coordinate of the point (snapped on the side)
+     * @param y (double): the y-coordinate of the point (snapped on the side)
+     * @return (Vertex): the new vertex with its counter-clockwise curvilinear abscissa along the polygon boundary
+     */
+    private Vertex borderVertex(PointArray polygon, int side, double x, double y){
+        int next = side == polygon.size()-1 ? 0 : side+1;
+        double ax = polygon.x(side), ay = polygon.y(side);
+        double ex = polygon.x(next) - ax, ey = polygon.y(next) - ay;
+
+        // Projection on the side, the corners being exactly reused (e.g. for the axis aligned sides of a box)
+        double s = ((x - ax) * ex + (y - ay) * ey) / (ex*ex + ey*ey);
+        Vertex v;
+        if(s <= 0){ s = 0; v = createVertex(ax, ay); }
+        else if(s >= 1){ s = 1; v = createVertex(polygon.x(next), polygon.y(next)); }
+        else v = createVertex(ex == 0 ? ax : ax + s*ex, ey == 0 ? ay : ay + s*ey);
+
+        v.border = borders[side] + s * (borders[side+1] - borders[side]);
+        return v;
+    }
+
+
+    /**
+     * Write the ends of the drawable edges of the diagram (one for each pair of twin half-edges, box boundary excluded)
+     * Note: the diagram must be bounded
+     * @param out (PointArray): output array, receiving the two ends of each edge in turn
+     */
+    void edges(PointArray out){
+        out.ensureCapacity(out.size() + 2 * edges.size());
+        for(HalfEdge h : edges){
+            out.add(h.origin.x, h.origin.y);
+            out.add(h.twin.origin.x, h.twin.origin.y);
+        }
+    }
+
+    /** @return (List of Vertex): the vertices of the diagram */
+    public List<Vertex> getVertices() {
+        return vertices;
+    }
+
+    /** @return (List of HalfEdge): the half-edges of the diagram */
+    public List<HalfEdge> getHalfEdges() {
+        return halfEdges;
+    }
+
+
+    /** Vertex of the diagram, shared by all the half-edges and cells incident to it */
+    public static final class Vertex {
+
+        /// The position, kept as coordinates such that a recycled vertex allocates nothing
+        double x, y;
+        /// One of the half-edges leaving this vertex
+        HalfEdge incident;
+        /// Counter-clockwise curvilinear abscissa along the clipping polygon boundary, negative if the vertex is not on it
+        double border = -1;
+        /// Mark of the last compaction which reached the vertex
+        int stamp;
+        /// Index of the vertex position among the welded ones
+        int index;
+
+        /** @return (Vector): the position */
+        public Vector getP() {
+            return new Vector(x, y);
+        }
+
+        /** @return (double): the x-coordinate of the position */
+        public double getX() {
+            return x;
+        }
+
+        /** @return (double): the y-coordinate of the position */
+        public double getY() {
+            return y;
+        }
+
+        /** @return (HalfEdge): one of the half-edges leaving this vertex */
+        public HalfEdge getIncident() {
+            return incident;
+        }
+
+        @Override
+        public String toString() {
+            return "Vertex" + getP();
+        }
+    }
+
+
+    /** Half-edge of the diagram, oriented such that its face is on its left */
+    public static final class HalfEdge {
+
+        /// The face on the left
+        VoronoiCell face;
+        /// The origin vertex (null while unknown, i.e. at infinity)
+        Vertex origin;
+        /// The twin half-edge (null for the box boundary)
+        HalfEdge twin;
+        /// The next and previous half-edges of the face
+        HalfEdge next, prev;
+        /// Mark of the last compaction which reached the half-edge
+        int stamp;
+
+        /** @return (VoronoiCell): the face on the left */
+        public VoronoiCell getFace() {
+            return face;
+        }
+
+        /** @return (Vertex): the origin vertex */
+        public Vertex getOrigin() {
+            return origin;
+        }
+
+        /** @return (Vertex): the destination vertex, i.e. the origin of the next half-edge */
+        public Vertex getDestination() {
+            return twin != null ? twin.origin : next != null ? next.origin : null;
+        }
+
+        /** @return (HalfEdge): the twin half-edge, null on the box boundary */
+        public HalfEdge getTwin() {
+            return twin;
+        }
+
+        /** @return (HalfEdge): the next half-edge of the face */
+        public HalfEdge getNext() {
+            return next;
+        }
+
+        /** @return (HalfEdge): the previous half-edge of the face */
+        public HalfEdge getPrev() {
+            return prev;
+        }
+
+        @Override
+        public String toString() {
+            return "HalfEdge{" + origin + " -> " + getDestination() + "}";
+        }
+    }
+}
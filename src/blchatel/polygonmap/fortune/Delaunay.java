@@ -0,0 +1,532 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Predicates;
+import blchatel.polygonmap.geometry2d.Rectangle;
+
+import java.util.Arrays;
+
+
+/**
+ * Incremental Delaunay triangulation (Bowyer-Watson) in struct-of-arrays form
+ * - The vertices and the triangles are int indices into parallel arrays, the freed triangles are recycled
+ * - The triangles are counter-clockwise and the neighbor i of a triangle is the one opposite to its vertex i
+ * - Three super vertices, far enough from the box for their Voronoi cells not to intersect it, enclose everything:
+ *   the Voronoi cells of the sites, bounded by the box, are hence exact
+ * - The point location walks from a triangle incident to the last site inserted into the same cell of a uniform grid
+ * - A site is inserted by re-triangulating the cavity of the triangles whose circumcircle contains it, and removed by
+ *   re-triangulating its star polygon with Delaunay ears
+ * All the decisions rely on the exact predicates, the circumcenters being only used to draw the Voronoi cells.
+ * @see Predicates
+ * @see DelaunayVoronoi
+ */
+final class Delaunay {
+
+    /** Null vertex or triangle index */
+    static final int NIL = -1;
+    /** Number of super vertices (the vertices 0, 1 and 2) */
+    static final int SUPER = 3;
+    /** Distance of the super vertices, relative to the box size */
+    private static final double SUPER_SCALE = 1e4;
+
+    /// Box of the sites
+    private final Rectangle box;
+
+    /// Vertices: position, one incident triangle (NIL once removed) and count (including the removed ones)
+    /// The removed vertices are recycled by the next insertions
+    double[] x, y;
+    int[] vertexTriangle;
+    int vertexCount;
+    private int[] freeVertices = new int[16];
+    private int freeVertexCount;
+
+    /// The sites whose Voronoi cell changed with the last insertion or removal (i.e. their triangles changed)
+    int[] changed = new int[16];
+    int changedCount;
+
+    /// Triangles: three vertices and three neighbors, circumcenter, and count (including the freed ones)
+    /// A freed triangle has a NIL first vertex and is linked to the next freed one by its first neighbor
+    int[] vertices, neighbors;
+    double[] cx, cy;
+    int triangleCount;
+    private int free = NIL;
+    /// The last created triangle, start of the walks without better hint
+    private int last;
+
+    /// Uniform grid of the last vertex inserted into each cell
+    private int[] grid = new int[0];
+    private int cols, rows;
+
+    /// Working arrays: visit marks of the triangles, triangle stack and cavity, boundary edges (origin, destination,
+    /// triangle outside) and the new triangle starting at each vertex
+    private int[] marks = new int[0];
+    private int mark;
+    private int[] stack = new int[16], cavity = new int[16];
+    private int[] boundary = new int[48];
+    private int[] starts = new int[0];
+    /// Star polygon of a removed vertex: vertices and triangle outside each edge
+    private int[] polygon = new int[16], outside = new int[16];
+
+    /**
+     * Create an empty triangulation, only made of its super triangle
+     * @param box (Rectangle): the box enclosing the sites
+     * @param capacity (int): the expected number of sites
+     */
+    Delaunay(Rectangle box, int capacity){
+        this.box = box;
+        x = new double[capacity + SUPER];
+        y = new double[capacity + SUPER];
+        vertexTriangle = new int[capacity + SUPER];
+        vertices = new int[6 * (capacity + 1)];
+        neighbors = new int[6 * (capacity + 1)];
+        cx = new double[2 * (capacity + 1)];
+        cy = new double[2 * (capacity + 1)];
+        clear(capacity);
+    }
+
+    /**
+     * Remove all the sites
+     * @param capacity (int): the expected number of sites, used to size the grid
+     */
+    void clear(int capacity){
+        vertexCount = 0;
+        freeVertexCount = 0;
+        triangleCount = 0;
+        free = NIL;
+
+        // Grid with about two sites per cell
+        double cell = Math.sqrt(2 * box.w * box.h / Math.max(1, capacity));
+        cols = Math.max(1, (int) Math.ceil(box.w / cell));
+        rows = Math.max(1, (int) Math.ceil(box.h / cell));
+        if(grid.length < cols * rows)
+            grid = new int[cols * rows];
+        Arrays.fill(grid, 0, cols * rows, NIL);
+
+        double size = Math.max(box.w, box.h) * SUPER_SCALE;
+        double mx = box.x + box.w / 2, my = box.y + box.h / 2;
+        int a = newVertex(mx - 2 * size, my - size);
+        int b = newVertex(mx + 2 * size, my - size);
+        int c = newVertex(mx, my + 2 * size);
+        last = newTriangle(a, b, c);
+        neighbors[0] = neighbors[1] = neighbors[2] = NIL;
+        vertexTriangle[a] = vertexTriangle[b] = vertexTriangle[c] = last;
+    }
+
+    /**
+     * @param v (int): a vertex
+     * @return (boolean): true if the vertex is one of the super vertices
+     */
+    static boolean isSuper(int v){
+        return v < SUPER;
+    }
+
+    /**
+     * @param v (int): a vertex
+     * @return (boolean): true if the vertex is a site of the triangulation (i.e. neither super nor removed)
+     */
+    boolean isSite(int v){
+        return v >= SUPER && v < vertexCount && vertexTriangle[v] != NIL;
+    }
+
+
+    /// Insertion
+
+    /**
+     * Insert a site
+     * @param px (double): x-coordinate of the site
+     * @param py (double): y-coordinate of the site
+     * @return (int): the new vertex, NIL if a vertex already exists at this position
+     */
+    int insert(double px, double py){
+
+        int t = locate(px, py, hint(px, py));
+        for(int k = 0; k < 3; k++){
+            int u = vertices[3*t + k];
+            if(x[u] == px && y[u] == py)
+                return NIL;
+        }
+        int v = newVertex(px, py);
+
+        // The cavity: the triangles whose circumcircle strictly contains the site, connected to t
+        mark++;
+        int top = 0, cavityCount = 0, boundaryCount = 0;
+        marks[t] = mark;
+        stack[top++] = t;
+        while(top > 0){
+            int c = stack[--top];
+            cavity = ensure(cavity, cavityCount + 1);
+            cavity[cavityCount++] = c;
+            for(int k = 0; k < 3; k++){
+                int nb = neighbors[3*c + k];
+                if(nb != NIL && marks[nb] == mark)
+                    continue;
+                if(nb != NIL && inCircumcircle(nb, px, py)){
+                    marks[nb] = mark;
+                    stack = ensure(stack, top + 1);
+                    stack[top++] = nb;
+                }
+                else {
+                    boundary = ensure(boundary, 3 * (boundaryCount + 1));
+                    boundary[3*boundaryCount] = vertices[3*c + (k+1) % 3];
+                    boundary[3*boundaryCount + 1] = vertices[3*c + (k+2) % 3];
+                    boundary[3*boundaryCount + 2] = nb;
+                    boundaryCount++;
+                }
+            }
+        }
+
+        // The cavity is star-shaped from the site: it is replaced by the fan of its boundary edges
+        for(int i = 0; i < cavityCount; i++)
+            freeTriangle(cavity[i]);
+        changedCount = 0;
+        addChanged(v);
+        for(int i = 0; i < boundaryCount; i++){
+            int a = boundary[3*i], b = boundary[3*i + 1], out = boundary[3*i + 2];
+            int n = newTriangle(a, b, v);
+            neighbors[3*n + 2] = out;
+            if(out != NIL)
+                link(out, a, b, n);
+            starts[a] = n;
+            vertexTriangle[a] = n;
+            addChanged(a);
+        }
+        for(int i = 0; i < boundaryCount; i++){
+            int a = boundary[3*i], b = boundary[3*i + 1];
+            int n = starts[a], next = starts[b];
+            neighbors[3*n] = next;
+            neighbors[3*next + 1] = n;
+        }
+        vertexTriangle[v] = last;
+        grid[gridCell(px, py)] = v;
+        return v;
+    }
+
+    /**
+     * @param t (int): a triangle
+     * @param px (double): x-coordinate of the point
+     * @param py (double): y-coordinate of the point
+     * @return (boolean): true if the point is strictly inside the circumcircle of the triangle
+     */
+    private boolean inCircumcircle(int t, double px, double py){
+        int a = vertices[3*t], b = vertices[3*t + 1], c = vertices[3*t + 2];
+        return Predicates.incircle(x[a], y[a], x[b], y[b], x[c], y[c], px, py) > 0;
+    }
+
+    /**
+     * Find the triangle containing a point by walking from a given triangle
+     * @param px (double): x-coordinate of the point
+     * @param py (double): y-coordinate of the point
+     * @param t (int): the start triangle
+     * @return (int): a triangle containing the point (possibly on its boundary)
+     */
+    int locate(double px, double py, int t){
+        // The first tested edge rotates so that the walk cannot cycle on degenerated configurations
+        int r = 0;
+        walk:
+        while(true){
+            for(int i = 0; i < 3; i++){
+                int k = (r + i) % 3;
+                int a = vertices[3*t + (k+1) % 3], b = vertices[3*t + (k+2) % 3];
+                if(Predicates.orient2d(x[a], y[a], x[b], y[b], px, py) < 0){
+                    t = neighbors[3*t + k];
+                    r = (r + 1) % 3;
+                    continue walk;
+                }
+            }
+            return t;
+        }
+    }
+
+    /**
+     * @param px (double): x-coordinate of a point
+     * @param py (double): y-coordinate of a point
+     * @return (int): a triangle close to the point, where to start its location
+     */
+    int hint(double px, double py){
+        int v = grid[gridCell(px, py)];
+        return v != NIL && vertexTriangle[v] != NIL ? vertexTriangle[v] : last;
+    }
+
+    /**
+     * @param px (double): x-coordinate of a point
+     * @param py (double): y-coordinate of a point
+     * @return (int): the grid cell of the point, clamped to the grid
+     */
+    private int gridCell(double px, double py){
+        int i = (int) ((px - box.x) / box.w * cols);
+        int j = (int) ((py - box.y) / box.h * rows);
+        i = Math.max(0, Math.min(cols - 1, i));
+        j = Math.max(0, Math.min(rows - 1, j));
+        return j * cols + i;
+    }
+
+    /**
+     * Sort sites along a boustrophedon path of the grid cells, so that consecutive insertions are close to each other
+     * @param xs (double[]): x-coordinates of the sites
+     * @param ys (double[]): y-coordinates of the sites
+     * @param n (int): number of sites
+     * @return (int[]): the sites in insertion order
+     */
+    int[] insertionOrder(double[] xs, double[] ys, int n){
+        int cells = cols * rows;
+        int[] counts = new int[cells + 1];
+        int[] keys = new int[n];
+        for(int i = 0; i < n; i++){
+            int c = gridCell(xs[i], ys[i]);
+            int row = c / cols, col = c % cols;
+            keys[i] = row * cols + ((row & 1) == 0 ? col : cols - 1 - col);
+            counts[keys[i] + 1]++;
+        }
+        for(int c = 0; c < cells; c++)
+            counts[c + 1] += counts[c];
+        int[] order = new int[n];
+        for(int i = 0; i < n; i++)
+            order[counts[keys[i]]++] = i;
+        return order;
+    }
+
+
+    /// Removal
+
+    /**
+     * Remove a site, re-triangulating its star polygon
+     * @param v (int): the vertex of the site
+     */
+    void remove(int v){
+
+        if(!isSite(v))
+            throw new IllegalArgumentException("Only a site of the triangulation can be removed");
+
+        // The star polygon, counter-clockwise, and the triangle outside of each of its edges
+        int t = vertexTriangle[v], first = t, m = 0;
+        do {
+            int k = indexOf(t, v);
+            polygon = ensure(polygon, m + 1);
+            outside = ensure(outside, m + 1);
+            polygon[m] = vertices[3*t + (k+1) % 3];
+            outside[m] = neighbors[3*t + k];
+            m++;
+            int next = neighbors[3*t + (k+1) % 3];
+            freeTriangle(t);
+            t = next;
+        } while(t != first);
+        changedCount = 0;
+        for(int i = 0; i < m; i++)
+            addChanged(polygon[i]);
+
+        // Clip the Delaunay ears: convex, with no other vertex of the polygon inside their circumcircle
+        while(m > 3){
+            int ear = NIL;
+            for(int i = 0; i < m && ear == NIL; i++)
+                if(isDelaunayEar(i, m))
+                    ear = i;
+            // Unreachable with exact predicates, but a convex ear keeps a valid triangulation anyway
+            for(int i = 0; i < m && ear == NIL; i++)
+                if(isConvex(i, m))
+                    ear = i;
+
+            int i1 = (ear + 1) % m, i2 = (ear + 2) % m;
+            int n = newTriangle(polygon[ear], polygon[i1], polygon[i2]);
+            setNeighbor(n, 2, outside[ear], polygon[ear], polygon[i1]);
+            setNeighbor(n, 0, outside[i1], polygon[i1], polygon[i2]);
+
+            // The ear is cut: its diagonal becomes an edge of the polygon
+            outside[ear] = n;
+            System.arraycopy(polygon, i1 + 1, polygon, i1, m - i1 - 1);
+            System.arraycopy(outside, i1 + 1, outside, i1, m - i1 - 1);
+            m--;
+        }
+        int n = newTriangle(polygon[0], polygon[1], polygon[2]);
+        setNeighbor(n, 2, outside[0], polygon[0], polygon[1]);
+        setNeighbor(n, 0, outside[1], polygon[1], polygon[2]);
+        setNeighbor(n, 1, outside[2], polygon[2], polygon[0]);
+        for(int i = 0; i < 3; i++)
+            vertexTriangle[polygon[i]] = n;
+
+        vertexTriangle[v] = NIL;
+        int cell = gridCell(x[v], y[v]);
+        if(grid[cell] == v)
+            grid[cell] = polygon[0] >= SUPER ? polygon[0] : NIL;
+        freeVertices = ensure(freeVertices, freeVertexCount + 1);
+        freeVertices[freeVertexCount++] = v;
+    }
+
+    /**
+     * @param i (int): the first vertex of the ear into the star polygon
+     * @param m (int): the number of vertices of the polygon
+     * @return (boolean): true if the ear is convex
+     */
+    private boolean isConvex(int i, int m){
+        int a = polygon[i], b = polygon[(i+1) % m], c = polygon[(i+2) % m];
+        return Predicates.orient2d(x[a], y[a], x[b], y[b], x[c], y[c]) > 0;
+    }
+
+    /**
+     * @param i (int): the first vertex of the ear into the star polygon
+     * @param m (int): the number of vertices of the polygon
+     * @return (boolean): true if the ear is convex and no other vertex of the polygon is inside its circumcircle
+     */
+    private boolean isDelaunayEar(int i, int m){
+        if(!isConvex(i, m))
+            return false;
+        int a = polygon[i], b = polygon[(i+1) % m], c = polygon[(i+2) % m];
+        for(int j = 3; j < m; j++){
+            int d = polygon[(i + j) % m];
+            if(Predicates.incircle(x[a], y[a], x[b], y[b], x[c], y[c], x[d], y[d]) > 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Set the neighbor of a new triangle and the reverse link
+     * @param t (int): the new triangle
+     * @param k (int): the index of the neighbor
+     * @param out (int): the neighbor, may be NIL
+     * @param a (int): origin of the shared edge in t
+     * @param b (int): destination of the shared edge in t
+     */
+    private void setNeighbor(int t, int k, int out, int a, int b){
+        neighbors[3*t + k] = out;
+        if(out != NIL)
+            link(out, a, b, t);
+        vertexTriangle[a] = t;
+    }
+
+
+    /// Triangles and vertices
+
+    /**
+     * Set the neighbor of a triangle across one of its edges
+     * @param t (int): the triangle
+     * @param a (int): destination of the edge in t (i.e. its origin in the neighbor)
+     * @param b (int): origin of the edge in t
+     * @param neighbor (int): the new neighbor
+     */
+    private void link(int t, int a, int b, int neighbor){
+        for(int k = 0; k < 3; k++)
+            if(vertices[3*t + (k+1) % 3] == b && vertices[3*t + (k+2) % 3] == a){
+                neighbors[3*t + k] = neighbor;
+                return;
+            }
+        throw new IllegalStateException("The triangles do not share the edge");
+    }
+
+    /**
+     * @param t (int): a triangle
+     * @param v (int): one of its vertices
+     * @return (int): the index of the vertex into the triangle
+     */
+    int indexOf(int t, int v){
+        return vertices[3*t] == v ? 0 : vertices[3*t + 1] == v ? 1 : 2;
+    }
+
+    /**
+     * @param t (int): a triangle
+     * @param neighbor (int): one of its neighbors
+     * @return (int): the index of the neighbor into the triangle
+     */
+    int neighborIndex(int t, int neighbor){
+        return neighbors[3*t] == neighbor ? 0 : neighbors[3*t + 1] == neighbor ? 1 : 2;
+    }
+
+    /**
+     * Create a vertex, growing the arrays if needed
+     * @return (int): the new vertex
+     */
+    private int newVertex(double px, double py){
+        if(freeVertexCount > 0){
+            int v = freeVertices[--freeVertexCount];
+            x[v] = px;
+            y[v] = py;
+            return v;
+        }
+        if(vertexCount == x.length){
+            int capacity = 2 * x.length;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            vertexTriangle = Arrays.copyOf(vertexTriangle, capacity);
+        }
+        if(starts.length < x.length)
+            starts = new int[x.length];
+        x[vertexCount] = px;
+        y[vertexCount] = py;
+        vertexTriangle[vertexCount] = NIL;
+        return vertexCount++;
+    }
+
+    /**
+     * Record a site whose cell changed, the super vertices being ignored
+     * @param v (int): the vertex of the site
+     */
+    private void addChanged(int v){
+        if(isSuper(v))
+            return;
+        changed = ensure(changed, changedCount + 1);
+        changed[changedCount++] = v;
+    }
+
+    /**
+     * Create a counter-clockwise triangle, recycling a freed one if any. Its neighbors are left undefined
+     * @return (int): the new triangle
+     */
+    private int newTriangle(int a, int b, int c){
+        int t;
+        if(free != NIL){
+            t = free;
+            free = neighbors[3*t];
+        }
+        else {
+            if(3 * (triangleCount + 1) > vertices.length){
+                int capacity = 2 * vertices.length;
+                vertices = Arrays.copyOf(vertices, capacity);
+                neighbors = Arrays.copyOf(neighbors, capacity);
+                cx = Arrays.copyOf(cx, capacity / 3);
+                cy = Arrays.copyOf(cy, capacity / 3);
+            }
+            t = triangleCount++;
+            if(marks.length < cx.length)
+                marks = Arrays.copyOf(marks, cx.length);
+        }
+        vertices[3*t] = a;
+        vertices[3*t + 1] = b;
+        vertices[3*t + 2] = c;
+
+        // Circumcenter, relative to a for accuracy
+        double bx = x[b] - x[a], by = y[b] - y[a];
+        double qx = x[c] - x[a], qy = y[c] - y[a];
+        double d = 2 * (bx * qy - by * qx);
+        double b2 = bx * bx + by * by, q2 = qx * qx + qy * qy;
+        cx[t] = x[a] + (qy * b2 - by * q2) / d;
+        cy[t] = y[a] + (bx * q2 - qx * b2) / d;
+
+        last = t;
+        return t;
+    }
+
+    /**
+     * Free a triangle for a later creation
+     * @param t (int): the triangle
+     */
+    private void freeTriangle(int t){
+        vertices[3*t] = NIL;
+        neighbors[3*t] = free;
+        free = t;
+    }
+
+    /**
+     * @param t (int): a triangle index
+     * @return (boolean): true if the triangle is in use
+     */
+    boolean isTriangle(int t){
+        return vertices[3*t] != NIL;
+    }
+
+    /**
+     * @param array (int[]): a working array
+     * @param size (int): the needed size
+     * @return (int[]): the array, or a larger copy
+     */
+    private static int[] ensure(int[] array, int size){
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, 2 * array.length));
+    }
+}
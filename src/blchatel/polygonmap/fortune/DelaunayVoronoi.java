@@ -0,0 +1,595 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.PointSet;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+import blchatel.polygonmap.swing.DrawSupport;
+import blchatel.polygonmap.swing.SwingShape;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+
+/**
+ * Voronoi diagram derived from the incremental Delaunay triangulation of its sites
+ * - The triangulation is built by Bowyer-Watson insertions, in the order of a path through a uniform grid
+ * - The Voronoi cell of a site is the polygon of the circumcenters of its triangles, clipped by the box
+ * - The twin half-edges are the duals of the same Delaunay edge and share their vertices
+ * Unlike the Fortune sweep, the diagram is mutable: a site can be inserted, removed or moved, only the cells whose
+ * triangles changed being rebuilt (the others keep their records, which are linked to the new ones).
+ * The cells are the same as the ones of the Fortune engine.
+ * @see Delaunay
+ * @see Voronoi
+ * @see VoronoiDiagram
+ */
+public class DelaunayVoronoi implements VoronoiDiagram {
+
+    /** Label of a clipped cell edge lying on the box boundary */
+    private static final int BOX = -1;
+
+    /// Box of the diagram
+    private final Rectangle box;
+    /// The triangulation of the sites
+    private final Delaunay delaunay;
+    /// Doubly-connected edge list of the cells
+    private final Dcel dcel;
+    /// Welding of the circumcenters closer than Vector.EPSILON (e.g. the ones of nearly cocircular sites),
+    /// and vertex of each welded circumcenter, shared by all the cells around it
+    private final PointSet welding;
+    private Dcel.Vertex[] welded = new Dcel.Vertex[0];
+    /// Ends of the edges of the diagram, computed on demand for drawing
+    private PointArray segments;
+
+    /// Cells of the diagram in the order of the sites (the pool holding the cells in use first),
+    /// vertex of the triangulation of each cell and cell of each vertex
+    private final List<VoronoiCell> cells;
+    private final List<VoronoiCell> cellPool;
+    private int[] vertexOf = new int[0];
+    private int[] cellOf = new int[0];
+    /// Mark of the cells rebuilt by the current build
+    private int[] cellStamps = new int[0];
+
+    /// Half-edges created since the last full build or compaction, and half-edges in use at that time:
+    /// the records of the locally rebuilt cells are recycled when too many of them are left behind
+    private int created, live;
+    private boolean dirty;
+
+    /// Half-edge dual to each directed Delaunay edge (i.e. triangle side), valid if stamped by the current build
+    private Dcel.HalfEdge[] duals = new Dcel.HalfEdge[0];
+    private int[] dualStamps = new int[0];
+    private int stamp;
+
+    /// Working polygons of the clipping: points and label (triangle side or BOX) of the edge starting at each point,
+    /// and welded circumcenter of each point (-1 for a point on the box boundary)
+    private double[] px = new double[16], py = new double[16], qx = new double[16], qy = new double[16];
+    private int[] pl = new int[16], ql = new int[16], pw = new int[16], qw = new int[16];
+    private Dcel.HalfEdge[] cycle = new Dcel.HalfEdge[16];
+    /// Site of the cell being built
+    private double siteX, siteY;
+
+    /**
+     * Create and generate a Voronoi Diagram for given site points
+     * @param sites (Collection of Vector): the distinct site points
+     * @param box (Rectangle): the bounding box of the diagram
+     */
+    public DelaunayVoronoi(Collection<Vector> sites, Rectangle box) {
+        this.box = box;
+        int n = sites.size();
+        this.delaunay = new Delaunay(box, n);
+        this.dcel = new Dcel(n);
+        this.welding = new PointSet(Vector.EPSILON, 2*n);
+        this.cells = new ArrayList<>(n);
+        this.cellPool = new ArrayList<>(n);
+        reset(sites);
+    }
+
+
+    /**
+     * Builder of the Delaunay engine
+     * @see Voronoi.Builder
+     */
+    public static class Builder implements VoronoiEngine {
+
+        /// Box of the diagrams
+        private final Rectangle box;
+
+        /**
+         * Default Builder constructor
+         * @param box (Rectangle): the bounding box of the diagrams
+         */
+        public Builder(Rectangle box) {
+            this.box = box;
+        }
+
+        @Override
+        public DelaunayVoronoi build(Collection<Vector> sites) {
+            return new DelaunayVoronoi(sites, box);
+        }
+    }
+
+
+    /// DelaunayVoronoi implements VoronoiDiagram
+
+    @Override
+    public void reset(Collection<Vector> sites) {
+
+        int n = sites.size();
+        Vector[] input = sites.toArray(new Vector[n]);
+        double[] xs = new double[n], ys = new double[n];
+        for(int i = 0; i < n; i++){
+            xs[i] = input[i].x;
+            ys[i] = input[i].y;
+        }
+
+        delaunay.clear(n);
+        cells.clear();
+        for(int i = 0; i < n; i++)
+            cells.add(newCell(input[i], i));
+
+        for(int i : delaunay.insertionOrder(xs, ys, n)){
+            int v = delaunay.insert(xs[i], ys[i]);
+            if(v == Delaunay.NIL)
+                throw new IllegalArgumentException("The sites must be distinct: " + input[i]);
+            setVertex(cells.get(i), v);
+        }
+        buildCells();
+    }
+
+    @Override
+    public List<VoronoiCell> getCells() {
+        return Collections.unmodifiableList(cells);
+    }
+
+    @Override
+    public Set<Vector> cellCentroids() {
+
+        Set<Vector> centroids = new HashSet<>(cells.size());
+
+        for(VoronoiCell cell : cells)
+            centroids.add(cell.center());
+
+        return centroids;
+    }
+
+    /** @return (Dcel): the doubly-connected edge list of the diagram */
+    public Dcel getDcel() {
+        if(dirty)
+            compact();
+        return dcel;
+    }
+
+    @Override
+    public void draw(DrawSupport support) {
+
+        support.clearItems();
+
+        // A single path for all the cells and another one for all the edges
+        PointArray vertices = new PointArray(6 * cells.size());
+        support.registerShape(new SwingShape(VoronoiCell.toPath(cells, vertices), Color.GREEN, 0));
+
+        if(segments == null){
+            segments = new PointArray(6 * cells.size());
+            getDcel().edges(segments);
+        }
+        support.registerShape(new SwingShape(segments.toSegments(), null, Color.BLACK, 1, 1, 10));
+
+        support.registerShape(new SwingShape(box.toPath(), null, Color.BLACK, 1, 1, 20));
+
+        support.refresh();
+    }
+
+
+    /// Edition
+
+    /**
+     * Insert a new site, rebuilding the cells around it
+     * @param site (Vector): the new site, distinct from the others
+     * @return (List of VoronoiCell): the changed cells, the new one (i.e. the last one of the diagram) included
+     */
+    public List<VoronoiCell> insertSite(Vector site){
+        int v = delaunay.insert(site.x, site.y);
+        if(v == Delaunay.NIL)
+            throw new IllegalArgumentException("The sites must be distinct: " + site);
+        VoronoiCell cell = newCell(site, cells.size());
+        cells.add(cell);
+        setVertex(cell, v);
+
+        List<VoronoiCell> changed = new ArrayList<>();
+        stamp++;
+        collectChanged(changed);
+        rebuild(changed);
+        return changed;
+    }
+
+    /**
+     * Remove a site, rebuilding the cells around it. The last cell of the diagram takes the place of the removed one
+     * Note: the removed cell must not be used anymore
+     * @param cell (VoronoiCell): a cell of the diagram
+     * @return (List of VoronoiCell): the changed cells
+     */
+    public List<VoronoiCell> removeSite(VoronoiCell cell){
+        checkCell(cell);
+        delaunay.remove(vertexOf[cell.id]);
+
+        // The last cell takes the place of the removed one, in the cells and in the pool
+        int id = cell.id, last = cells.size() - 1;
+        VoronoiCell moved = cells.get(last);
+        cells.set(id, moved);
+        cells.remove(last);
+        cellPool.set(id, moved);
+        cellPool.set(last, cell);
+        moved.id = id;
+        setVertex(moved, vertexOf[last]);
+
+        List<VoronoiCell> changed = new ArrayList<>();
+        stamp++;
+        collectChanged(changed);
+        rebuild(changed);
+        return changed;
+    }
+
+    /**
+     * Move a site, rebuilding the cells around its previous and new positions
+     * @param cell (VoronoiCell): a cell of the diagram
+     * @param site (Vector): the new position of its site, distinct from the other sites
+     * @return (List of VoronoiCell): the changed cells, the moved one included, empty if the site is not moved
+     */
+    public List<VoronoiCell> moveSite(VoronoiCell cell, Vector site){
+        checkCell(cell);
+        if(site.x == cell.getX() && site.y == cell.getY())
+            return new ArrayList<>();
+        int previous = vertexOf[cell.id];
+        int v = delaunay.insert(site.x, site.y);
+        if(v == Delaunay.NIL)
+            throw new IllegalArgumentException("The sites must be distinct: " + site);
+        setVertex(cell, v);
+        cell.reset(site);
+
+        List<VoronoiCell> changed = new ArrayList<>();
+        stamp++;
+        collectChanged(changed);
+        delaunay.remove(previous);
+        collectChanged(changed);
+        rebuild(changed);
+        return changed;
+    }
+
+    /**
+     * Check that a cell is one of the diagram
+     * @param cell (VoronoiCell): the cell
+     */
+    private void checkCell(VoronoiCell cell){
+        if(cell.id >= cells.size() || cells.get(cell.id) != cell)
+            throw new IllegalArgumentException("The cell does not belong to the diagram");
+    }
+
+    /**
+     * Add the cells changed by the last operation of the triangulation to the given list, marking them
+     * @param changed (List of VoronoiCell): the changed cells, without duplicates
+     */
+    private void collectChanged(List<VoronoiCell> changed){
+        for(int i = 0; i < delaunay.changedCount; i++){
+            int v = delaunay.changed[i];
+            if(!delaunay.isSite(v))
+                continue;
+            VoronoiCell cell = cells.get(cellOf[v]);
+            if(cellStamps[cell.id] != stamp){
+                cellStamps[cell.id] = stamp;
+                changed.add(cell);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the given cells, the other ones being unchanged
+     * @param changed (List of VoronoiCell): the cells to rebuild, marked by the current stamp
+     */
+    private void rebuild(List<VoronoiCell> changed){
+        ensureDuals();
+        for(VoronoiCell cell : changed)
+            cell.reset(cell.getP());
+        for(VoronoiCell cell : changed)
+            buildCell(cell);
+        segments = null;
+        dirty = true;
+        if(created > 2 * live + 1024)
+            compact();
+    }
+
+    /**
+     * Register again the records in use by the cells, recycling the other ones.
+     * The welding keeps the circumcenters of the vertices in use only, in the same order such that the circumcenters
+     * of the unchanged triangles are still welded to them
+     */
+    private void compact(){
+        dcel.compact(cells);
+        Dcel.Vertex[] used = new Dcel.Vertex[welding.size()];
+        for(Dcel.Vertex v : dcel.getVertices())
+            if(v.index >= 0)
+                used[v.index] = v;
+        welding.clear();
+        Arrays.fill(welded, null);
+        for(Dcel.Vertex v : used){
+            if(v != null){
+                v.index = welding.add(v.x, v.y);
+                weld(v.index, v);
+            }
+        }
+        live = created = dcel.getHalfEdges().size();
+        dirty = false;
+    }
+
+
+    /// Cells
+
+    /**
+     * Get a cell from the pool, or create it
+     * @param site (Vector): the cell site
+     * @param id (int): the index of the cell
+     * @return (VoronoiCell): the cell
+     */
+    private VoronoiCell newCell(Vector site, int id) {
+        VoronoiCell cell;
+        if(id < cellPool.size()) {
+            cell = cellPool.get(id);
+            cell.reset(site);
+        }
+        else {
+            cell = new VoronoiCell(site);
+            cellPool.add(cell);
+        }
+        cell.id = id;
+        if(cellStamps.length <= id){
+            int capacity = Math.max(16, 2 * id);
+            cellStamps = Arrays.copyOf(cellStamps, capacity);
+            vertexOf = Arrays.copyOf(vertexOf, capacity);
+        }
+        return cell;
+    }
+
+    /**
+     * Associate a cell with its vertex of the triangulation
+     * @param cell (VoronoiCell): the cell
+     * @param v (int): the vertex of its site
+     */
+    private void setVertex(VoronoiCell cell, int v){
+        vertexOf[cell.id] = v;
+        if(cellOf.length <= v)
+            cellOf = Arrays.copyOf(cellOf, Math.max(16, 2 * v));
+        cellOf[v] = cell.id;
+    }
+
+    /** Build the doubly-connected edge list of all the cells from the triangulation */
+    private void buildCells(){
+        dcel.clear();
+        welding.clear();
+        Arrays.fill(welded, null);
+        segments = null;
+        created = 0;
+        stamp++;
+        ensureDuals();
+        for(VoronoiCell cell : cells)
+            cellStamps[cell.id] = stamp;
+        for(VoronoiCell cell : cells)
+            buildCell(cell);
+        live = created;
+        dirty = false;
+    }
+
+    /** Grow the dual half-edges to the triangles of the triangulation */
+    private void ensureDuals(){
+        if(duals.length < delaunay.vertices.length){
+            duals = Arrays.copyOf(duals, delaunay.vertices.length);
+            dualStamps = Arrays.copyOf(dualStamps, delaunay.vertices.length);
+        }
+    }
+
+    /**
+     * Build the boundary of a cell: the circumcenters of the triangles around its site, clipped by the box.
+     * The circumcenters are welded as the vertices of the Fortune engine (Dcel.bound): the edges between two welded
+     * circumcenters are dropped, on both sides since the welding of a circumcenter does not depend on the cell, and
+     * the cells around a welded circumcenter share its vertex.
+     * The half-edges dual to a Delaunay edge whose other cell is already built, or is not rebuilt at all,
+     * become the twins of that cell ones
+     * @param cell (VoronoiCell): the cell, without edges
+     */
+    private void buildCell(VoronoiCell cell){
+
+        int v = vertexOf[cell.id];
+        siteX = delaunay.x[v];
+        siteY = delaunay.y[v];
+        int[] vertices = delaunay.vertices, neighbors = delaunay.neighbors;
+
+        // Circumcenters counter-clockwise around the site. The edge from the circumcenter of t to the next one is
+        // the dual of the side of t shared with the next triangle
+        int m = 0, t = delaunay.vertexTriangle[v], first = t;
+        do {
+            int k = delaunay.indexOf(t, v);
+            int side = 3*t + (k+1) % 3;
+            int w = welding.add(delaunay.cx[t], delaunay.cy[t]);
+            // Welded to the previous circumcenter: the edge between them is dropped
+            if(m == 0 || w != pw[m - 1]){
+                m = ensure(m + 1);
+                px[m - 1] = welding.x(w);
+                py[m - 1] = welding.y(w);
+                pw[m - 1] = w;
+            }
+            pl[m - 1] = Delaunay.isSuper(vertices[3*t + (k+2) % 3]) ? BOX : side;
+            t = neighbors[side];
+        } while(t != first);
+        while(m > 1 && pw[m - 1] == pw[0])
+            m--;
+
+        m = clip(m);
+
+        // Half-edges, twins of the ones of the cells already built or unchanged
+        for(int i = 0; i < m; i++){
+            Dcel.HalfEdge h = dcel.createHalfEdge(cell);
+            int side = pl[i];
+            if(side != BOX){
+                int t1 = side / 3, t2 = neighbors[side];
+                int twin = 3*t2 + delaunay.neighborIndex(t2, t1);
+                if(dualStamps[twin] == stamp)
+                    dcel.twin(duals[twin], h);
+                else {
+                    VoronoiCell other = cells.get(cellOf[neighborSite(side)]);
+                    Dcel.HalfEdge g = cellStamps[other.id] == stamp ? null : edgeTo(other, cell);
+                    if(g != null)
+                        dcel.twin(g, h);
+                }
+                duals[side] = h;
+                dualStamps[side] = stamp;
+            }
+            cycle[i] = h;
+        }
+        created += m;
+
+        // Vertices, shared with the other cells around the welded circumcenters, and with the twins on the box
+        for(int i = 0; i < m; i++){
+            Dcel.HalfEdge h = cycle[i], prev = cycle[(i + m - 1) % m];
+            int w = pw[i];
+            if(w >= 0 && w < welded.length && welded[w] != null)
+                h.origin = welded[w];
+            else if(w < 0 && h.twin != null)
+                h.origin = h.twin.next.origin;
+            else if(w < 0 && prev.twin != null)
+                h.origin = prev.twin.origin;
+            else {
+                h.origin = dcel.createVertex(px[i], py[i]);
+                h.origin.incident = h;
+                h.origin.index = w;
+                if(w >= 0)
+                    weld(w, h.origin);
+            }
+            Dcel.link(prev, h);
+        }
+        cell.edge = cycle[0];
+    }
+
+    /**
+     * Set the vertex of a welded circumcenter
+     * @param w (int): the index of the welded circumcenter
+     * @param vertex (Dcel.Vertex): its vertex
+     */
+    private void weld(int w, Dcel.Vertex vertex){
+        if(w >= welded.length)
+            welded = Arrays.copyOf(welded, Math.max(16, 2 * w));
+        welded[w] = vertex;
+    }
+
+    /**
+     * @param side (int): a side of a triangle, dual to an edge of the cell being built
+     * @return (int): the vertex of the site on the other side of the edge
+     */
+    private int neighborSite(int side){
+        return delaunay.vertices[3*(side / 3) + (side % 3 + 1) % 3];
+    }
+
+    /**
+     * Find the half-edge of an unchanged cell whose twin was (before its rebuild) a half-edge of the given cell
+     * @param cell (VoronoiCell): the unchanged cell
+     * @param other (VoronoiCell): the rebuilt cell
+     * @return (Dcel.HalfEdge): the half-edge, null if none (i.e. the edge is out of the box)
+     */
+    private static Dcel.HalfEdge edgeTo(VoronoiCell cell, VoronoiCell other){
+        Dcel.HalfEdge h = cell.edge;
+        do {
+            if(h.twin != null && h.twin.face == other)
+                return h;
+            h = h.next;
+        } while(h != cell.edge);
+        return null;
+    }
+
+    /**
+     * Clip the working polygon by the box (Sutherland-Hodgman), keeping the label of each edge
+     * @param m (int): the number of points of the polygon
+     * @return (int): the number of points of the clipped polygon
+     */
+    private int clip(int m){
+        m = clip(m, 0, box.x, 1);
+        m = clip(m, 0, box.x + box.w, -1);
+        m = clip(m, 1, box.y, 1);
+        return clip(m, 1, box.y + box.h, -1);
+    }
+
+    /**
+     * Clip the working polygon by a half-plane bounded by an axis
+     * @param m (int): the number of points of the polygon
+     * @param axis (int): 0 for a vertical boundary x = bound, 1 for a horizontal boundary y = bound
+     * @param bound (double): the coordinate of the boundary
+     * @param sign (int): 1 to keep the points over the bound, -1 to keep the points under
+     * @return (int): the number of points of the clipped polygon
+     */
+    private int clip(int m, int axis, double bound, int sign){
+        int n = 0;
+        for(int i = 0; i < m; i++){
+            int j = (i + 1) % m;
+            double pi = axis == 0 ? px[i] : py[i], pj = axis == 0 ? px[j] : py[j];
+            boolean in = sign * (pi - bound) >= 0, nextIn = sign * (pj - bound) >= 0;
+            if(in)
+                n = emit(n, px[i], py[i], pl[i], pw[i]);
+            if(in != nextIn){
+                double f = (bound - pi) / (pj - pi);
+                double ix = axis == 0 ? bound : px[i] + f * (px[j] - px[i]);
+                double iy = axis == 1 ? bound : py[i] + f * (py[j] - py[i]);
+                // The circumcenters of the triangles of the super vertices are far, hence inaccurate:
+                // the intersection of an edge between two sites is computed from their bisector instead
+                if(pl[i] != BOX){
+                    int b = neighborSite(pl[i]);
+                    double dx = delaunay.x[b] - siteX, dy = delaunay.y[b] - siteY;
+                    double mx = (delaunay.x[b] + siteX) / 2, my = (delaunay.y[b] + siteY) / 2;
+                    if(axis == 0 && dy != 0)
+                        iy = my - (bound - mx) * dx / dy;
+                    else if(axis == 1 && dx != 0)
+                        ix = mx - (bound - my) * dy / dx;
+                }
+                // Leaving the half-plane, the edge follows the boundary until it enters it again
+                n = emit(n, ix, iy, in ? BOX : pl[i], -1);
+            }
+        }
+        double[] tx = px, ty = py;
+        int[] tl = pl, tw = pw;
+        px = qx; py = qy; pl = ql; pw = qw;
+        qx = tx; qy = ty; ql = tl; qw = tw;
+        return n;
+    }
+
+    /**
+     * Append a point to the output polygon of the clipping
+     * @return (int): the new number of points
+     */
+    private int emit(int n, double x, double y, int label, int weld){
+        if(n == qx.length){
+            qx = Arrays.copyOf(qx, 2*n);
+            qy = Arrays.copyOf(qy, 2*n);
+            ql = Arrays.copyOf(ql, 2*n);
+            qw = Arrays.copyOf(qw, 2*n);
+        }
+        qx[n] = x;
+        qy[n] = y;
+        ql[n] = label;
+        qw[n] = weld;
+        return n + 1;
+    }
+
+    /**
+     * Grow the working polygon arrays if needed
+     * @param size (int): the needed size
+     * @return (int): the size
+     */
+    private int ensure(int size){
+        if(size > px.length){
+            int capacity = 2 * size;
+            px = Arrays.copyOf(px, capacity);
+            py = Arrays.copyOf(py, capacity);
+            pl = Arrays.copyOf(pl, capacity);
+            pw = Arrays.copyOf(pw, capacity);
+        }
+        if(size + 4 > cycle.length)
+            cycle = Arrays.copyOf(cycle, 2 * (size + 4));
+        return size;
+    }
+}
@@ -11,4 +11,10 @@ public interface Event {
     /** @return (Vector): the point of interest of the event. Either the site for (SITE_EVENT) or the bottom most circle point for CIRCLE_EVENT*/
     Vector getP();
 
+    /** @return (double): the x-coordinate of the point of interest, without allocation */
+    double getX();
+
+    /** @return (double): the y-coordinate of the point of interest, without allocation */
+    double getY();
+
 }
@@ -0,0 +1,73 @@
+package blchatel.polygonmap.fortune;
+
+
+/**
+ * Priority queue of the Fortune sweep line.
+ * Events are polled by decreasing y-coordinate and, for the same y, by increasing x-coordinate.
+ * @see Event
+ * @see Voronoi
+ */
+public interface EventQueue {
+
+    /** Available implementations, selectable for A/B comparison */
+    enum Type {
+        /** java.util.PriorityQueue with a comparator over the event vectors: linear removal */
+        PRIORITY_QUEUE,
+        /** Binary heap with primitive keys which knows the position of each circle event: logarithmic removal */
+        INDEXED_HEAP,
+        /** Sites sorted once and read through a cursor, merged with an indexed heap holding only circle events */
+        SORTED_SITES
+    }
+
+    /**
+     * Create an empty event queue of the given type
+     * @param type (Type): the implementation to use
+     * @param capacity (int): the expected number of events
+     * @return (EventQueue): the new queue
+     */
+    static EventQueue create(Type type, int capacity){
+        switch (type){
+            case PRIORITY_QUEUE: return new PriorityEventQueue(capacity);
+            case INDEXED_HEAP: return new IndexedEventQueue(capacity);
+            case SORTED_SITES: return new SortedSiteEventQueue(capacity);
+            default: throw new IllegalArgumentException("Unknown event queue type " + type);
+        }
+    }
+
+    /**
+     * Insert a new event
+     * @param e (Event): the event to insert, not null
+     */
+    void add(Event e);
+
+    /**
+     * Remove and return the next event (highest y-coordinate)
+     * @return (Event): the next event, null if the queue is empty
+     */
+    Event poll();
+
+    /**
+     * Remove the given event from the queue (i.e. a false alarm)
+     * @param e (CircleEvent): the event to remove, not null
+     */
+    void remove(CircleEvent e);
+
+    /**
+     * Replace a queued event by a new one
+     * @param old (CircleEvent): the queued event to remove, not null
+     * @param e (CircleEvent): the event to insert instead, not null
+     */
+    default void replace(CircleEvent old, CircleEvent e){
+        remove(old);
+        add(e);
+    }
+
+    /** Remove all the events, keeping the allocated storage for a new sweep */
+    void clear();
+
+    /** @return (boolean): true if there is no more event */
+    boolean isEmpty();
+
+    /** @return (int): the number of queued events */
+    int size();
+}
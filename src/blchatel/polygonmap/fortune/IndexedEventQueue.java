@@ -0,0 +1,197 @@
+package blchatel.polygonmap.fortune;
+
+import java.util.Arrays;
+
+
+/**
+ * Event queue implemented as an array binary heap with primitive keys.
+ * The y and x coordinates of each event are copied into parallel double arrays so that the
+ * sift operations never dereference the event vectors.
+ * Each circle event stores its position into the heap, hence it can be removed or replaced in O(log n)
+ * @see EventQueue
+ * @see CircleEvent
+ */
+final class IndexedEventQueue implements EventQueue {
+
+    /// Heap arrays: the event and its keys at each position
+    private Event[] events;
+    private double[] ys;
+    private double[] xs;
+    /// Number of queued events
+    private int size;
+
+    /**
+     * Default IndexedEventQueue constructor
+     * @param capacity (int): the expected number of events
+     */
+    IndexedEventQueue(int capacity){
+        capacity = Math.max(16, capacity);
+        events = new Event[capacity];
+        ys = new double[capacity];
+        xs = new double[capacity];
+        size = 0;
+    }
+
+    /**
+     * Indicate if the event at position i must be polled before the event at position j
+     * @param i (int): first heap position
+     * @param j (int): second heap position
+     * @return (boolean): true if i has the priority
+     */
+    private boolean before(int i, int j){
+        return ys[i] > ys[j] || (ys[i] == ys[j] && xs[i] < xs[j]);
+    }
+
+    /**
+     * Put the event and its keys at the given position and update its index
+     * @param i (int): the heap position
+     * @param e (Event): the event
+     * @param y (double): the event y key
+     * @param x (double): the event x key
+     */
+    private void set(int i, Event e, double y, double x){
+        events[i] = e;
+        ys[i] = y;
+        xs[i] = x;
+        if(e instanceof CircleEvent)
+            ((CircleEvent) e).index = i;
+    }
+
+    /**
+     * Swap the two given heap positions
+     * @param i (int): first heap position
+     * @param j (int): second heap position
+     */
+    private void swap(int i, int j){
+        Event e = events[i];
+        double y = ys[i];
+        double x = xs[i];
+        set(i, events[j], ys[j], xs[j]);
+        set(j, e, y, x);
+    }
+
+    /**
+     * Move up the event at position i until the heap property is restored
+     * @param i (int): the heap position
+     * @return (int): the final position
+     */
+    private int siftUp(int i){
+        while(i > 0){
+            int parent = (i - 1) >>> 1;
+            if(!before(i, parent))
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+        return i;
+    }
+
+    /**
+     * Move down the event at position i until the heap property is restored
+     * @param i (int): the heap position
+     */
+    private void siftDown(int i){
+        while(true){
+            int left = 2*i + 1;
+            if(left >= size)
+                return;
+            int child = left + 1 < size && before(left + 1, left) ? left + 1 : left;
+            if(!before(child, i))
+                return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    /**
+     * Remove the event at the given position by moving the last event into it
+     * @param i (int): the heap position
+     */
+    private void removeAt(int i){
+        size--;
+        if(i != size){
+            set(i, events[size], ys[size], xs[size]);
+            if(siftUp(i) == i)
+                siftDown(i);
+        }
+        events[size] = null;
+    }
+
+
+    /// IndexedEventQueue implements EventQueue
+
+    @Override
+    public void add(Event e) {
+        if(size == events.length){
+            int capacity = 2*size;
+            events = Arrays.copyOf(events, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+        }
+        set(size, e, e.getY(), e.getX());
+        siftUp(size++);
+    }
+
+    @Override
+    public Event poll() {
+        if(size == 0)
+            return null;
+        Event e = events[0];
+        removeAt(0);
+        if(e instanceof CircleEvent)
+            ((CircleEvent) e).index = -1;
+        return e;
+    }
+
+    @Override
+    public void remove(CircleEvent e) {
+        int i = e.index;
+        if(i < 0 || i >= size || events[i] != e)
+            return;
+        removeAt(i);
+        e.index = -1;
+    }
+
+    @Override
+    public void replace(CircleEvent old, CircleEvent e) {
+        int i = old.index;
+        if(i < 0 || i >= size || events[i] != old){
+            add(e);
+            return;
+        }
+        old.index = -1;
+        set(i, e, e.getY(), e.getX());
+        if(siftUp(i) == i)
+            siftDown(i);
+    }
+
+    /** @return (double): the y key of the next event (undefined if the queue is empty) */
+    double peekY(){
+        return ys[0];
+    }
+
+    /** @return (double): the x key of the next event (undefined if the queue is empty) */
+    double peekX(){
+        return xs[0];
+    }
+
+    @Override
+    public void clear() {
+        for(int i = 0; i < size; i++){
+            if(events[i] instanceof CircleEvent)
+                ((CircleEvent) events[i]).index = -1;
+            events[i] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
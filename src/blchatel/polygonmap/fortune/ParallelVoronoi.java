@@ -0,0 +1,555 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+import blchatel.polygonmap.swing.DrawSupport;
+import blchatel.polygonmap.swing.SwingShape;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Divide and conquer construction of a Voronoi diagram on a ForkJoinPool
+ * - The sites are sorted by x-coordinate and divided into vertical strips with the same number of sites
+ * - Each strip builds concurrently, with the Fortune sweep, the sub-diagram of its own sites together with the
+ *   neighbor sites lying within a margin on both sides. The cell of an own site is exact as soon as the circle
+ *   centered at each of its vertices and going through the site lies within the covered x-range (no missing site
+ *   can be closer): otherwise the margin is doubled and the strip built again
+ * - The strips are merged along their dividing chains: the twin half-edges of two cells of different strips are
+ *   linked together and the vertices of the chain are shared
+ * The cells are hence the same as the ones of the Fortune engine, in a single doubly-connected edge list.
+ * @see Voronoi
+ * @see VoronoiDiagram
+ */
+public class ParallelVoronoi implements VoronoiDiagram {
+
+    /** Default minimal number of sites per strip: smaller site sets are built by a single strip */
+    public static final int MIN_STRIP = 4096;
+
+    /// Box of the diagram
+    private final Rectangle box;
+    /// The pool building the strips
+    private final ForkJoinPool pool;
+    /// Minimal number of sites per strip
+    private final int minStrip;
+
+    /// Number of sites
+    private int size;
+    /// The given sites, the sites sorted by x-coordinate, their x-coordinate and their index into the given collection
+    /// (the arrays are recycled by each computation, only their first size slots are used)
+    private Vector[] input;
+    private Vector[] sorted;
+    private double[] xs;
+    private int[] inputIndex;
+    /// Working buffers of the merge sort
+    private double[] xsBuffer;
+    private int[] indexBuffer;
+    /// The strips and the strip owning each sorted site
+    private Strip[] strips;
+    private int[] owner;
+    /// Cells of the diagram, by sorted site and in the order of the given sites
+    private VoronoiCell[] sortedCells;
+    private final List<VoronoiCell> cells;
+    private final List<VoronoiCell> cellsView;
+    /// Vertices of the dividing chains and the vertex they are replaced by, cleared by each merge
+    private final Map<Dcel.Vertex, Dcel.Vertex> shared;
+
+    /**
+     * Create and generate a Voronoi Diagram for given site points
+     * @param sites (Collection of Vector): the distinct site points
+     * @param box (Rectangle): the bounding box of the diagram
+     * @param pool (ForkJoinPool): the pool building the strips
+     * @param minStrip (int): the minimal number of sites per strip
+     */
+    ParallelVoronoi(Collection<Vector> sites, Rectangle box, ForkJoinPool pool, int minStrip) {
+        if(minStrip < 1)
+            throw new IllegalArgumentException("A strip must contain at least one site");
+        this.box = box;
+        this.pool = pool;
+        this.minStrip = minStrip;
+        this.strips = new Strip[0];
+        this.input = new Vector[0];
+        this.cells = new ArrayList<>(sites.size());
+        this.cellsView = Collections.unmodifiableList(cells);
+        this.shared = new IdentityHashMap<>();
+        reset(sites);
+    }
+
+
+    /**
+     * Builder of the parallel Voronoi engine
+     * @see Voronoi.Builder
+     */
+    public static class Builder implements VoronoiEngine {
+
+        /// Box of the diagrams
+        private final Rectangle box;
+        /// The pool building the strips
+        private ForkJoinPool pool = ForkJoinPool.commonPool();
+        /// Minimal number of sites per strip
+        private int minStrip = MIN_STRIP;
+
+        /**
+         * Default Builder constructor
+         * @param box (Rectangle): the bounding box of the diagrams
+         */
+        public Builder(Rectangle box) {
+            this.box = box;
+        }
+
+        /**
+         * Pool setter
+         * @param pool (ForkJoinPool): the pool building the strips
+         * @return (Builder): this builder
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Strip size setter
+         * @param minStrip (int): the minimal number of sites per strip
+         * @return (Builder): this builder
+         */
+        public Builder minStrip(int minStrip) {
+            this.minStrip = minStrip;
+            return this;
+        }
+
+        @Override
+        public ParallelVoronoi build(Collection<Vector> sites) {
+            return new ParallelVoronoi(sites, box, pool, minStrip);
+        }
+    }
+
+
+    /// ParallelVoronoi implements VoronoiDiagram
+
+    @Override
+    public void reset(Collection<Vector> sites) {
+
+        // Sort the sites by x-coordinate, on primitive keys
+        int n = sites.size();
+        size = n;
+        if(input.length < n){
+            input = new Vector[n];
+            sorted = new Vector[n];
+            xs = new double[n];
+            inputIndex = new int[n];
+            xsBuffer = new double[n];
+            indexBuffer = new int[n];
+            owner = new int[n];
+            sortedCells = new VoronoiCell[n];
+        }
+        sites.toArray(input);
+        for(int i = 0; i < n; i++){
+            xs[i] = input[i].x;
+            inputIndex[i] = i;
+        }
+        sort(0, n);
+        for(int i = 0; i < n; i++)
+            sorted[i] = input[inputIndex[i]];
+
+        // Divide them into strips with the same number of sites, keeping the previous strips for their diagram
+        int count = Math.max(1, Math.min(n / minStrip, 4 * pool.getParallelism()));
+        if(count != strips.length)
+            strips = Arrays.copyOf(strips, count);
+        for(int s = 0; s < count; s++){
+            if(strips[s] == null)
+                strips[s] = new Strip();
+            strips[s].lo = (int) ((long) n * s / count);
+            strips[s].hi = (int) ((long) n * (s + 1) / count);
+            Arrays.fill(owner, strips[s].lo, strips[s].hi, s);
+        }
+
+        // Build the strips concurrently, then merge them
+        double spacing = Math.sqrt(box.surface() / Math.max(1, n));
+        pool.invoke(new StripTask(0, count, 4 * spacing));
+        do {
+            for(Strip strip : strips)
+                for(int i = strip.lo; i < strip.hi; i++)
+                    sortedCells[i] = strip.diagram.getCells().get(i - strip.lo);
+        } while(rebuildMismatches());
+        merge();
+
+        // Once merged, the cells are indexed into this diagram, i.e. in the order of the given sites
+        cells.clear();
+        for(int i = 0; i < n; i++)
+            cells.add(null);
+        for(int i = 0; i < n; i++){
+            VoronoiCell cell = sortedCells[i];
+            cell.id = inputIndex[i];
+            cells.set(cell.id, cell);
+        }
+    }
+
+    /**
+     * Sort a range of the sites by x-coordinate: stable merge sort of the keys xs, carrying the indices inputIndex
+     * @param from (int): first site of the range (inclusive)
+     * @param to (int): last site of the range (exclusive)
+     */
+    private void sort(int from, int to){
+        if(to - from <= 32){
+            for(int i = from + 1; i < to; i++){
+                double x = xs[i];
+                int index = inputIndex[i];
+                int j = i - 1;
+                for(; j >= from && xs[j] > x; j--){
+                    xs[j+1] = xs[j];
+                    inputIndex[j+1] = inputIndex[j];
+                }
+                xs[j+1] = x;
+                inputIndex[j+1] = index;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(from, mid);
+        sort(mid, to);
+        if(xs[mid-1] <= xs[mid])
+            return;
+
+        // Only the left half is buffered: the merged slot never passes the next slot of the right half
+        System.arraycopy(xs, from, xsBuffer, from, mid - from);
+        System.arraycopy(inputIndex, from, indexBuffer, from, mid - from);
+        int i = from, j = mid, k = from;
+        while(i < mid && j < to){
+            if(xs[j] < xsBuffer[i]){
+                xs[k] = xs[j];
+                inputIndex[k++] = inputIndex[j++];
+            }
+            else {
+                xs[k] = xsBuffer[i];
+                inputIndex[k++] = indexBuffer[i++];
+            }
+        }
+        while(i < mid){
+            xs[k] = xsBuffer[i];
+            inputIndex[k++] = indexBuffer[i++];
+        }
+    }
+
+    @Override
+    public List<VoronoiCell> getCells() {
+        return cellsView;
+    }
+
+    @Override
+    public Set<Vector> cellCentroids() {
+
+        Set<Vector> centroids = new HashSet<>(cells.size());
+
+        for(VoronoiCell cell : cells)
+            centroids.add(cell.center());
+
+        return centroids;
+    }
+
+    @Override
+    public void draw(DrawSupport support) {
+
+        support.clearItems();
+
+        // A single path for all the cells and another one for all the edges
+        PointArray vertices = new PointArray(6 * cells.size());
+        support.registerShape(new SwingShape(VoronoiCell.toPath(cells, vertices), Color.GREEN, 0));
+
+        // Each edge is drawn once, from the cell with the lowest index
+        vertices.clear();
+        for(VoronoiCell cell : cells){
+            Dcel.HalfEdge h = cell.edge;
+            do {
+                if(h.twin != null && h.face.id < h.twin.face.id){
+                    vertices.add(h.origin.x, h.origin.y);
+                    vertices.add(h.twin.origin.x, h.twin.origin.y);
+                }
+                h = h.next;
+            } while(h != cell.edge);
+        }
+        support.registerShape(new SwingShape(vertices.toSegments(), null, Color.BLACK, 1, 1, 10));
+
+        support.registerShape(new SwingShape(box.toPath(), null, Color.BLACK, 1, 1, 20));
+
+        support.refresh();
+    }
+
+
+    /// Merge
+
+    /**
+     * Check that the strips agree on their dividing chains: a half-edge of an own cell whose twin is the cell of a
+     * site of another strip has a counterpart in that strip, unless it is collapsed (see merge).
+     * Both strips of a mismatch are built again with a doubled margin.
+     * @return (boolean): true if some strips were built again, false if they all agree
+     */
+    private boolean rebuildMismatches(){
+        boolean mismatch = false;
+        for(int s = 0; s < strips.length; s++){
+            Strip strip = strips[s];
+            for(int i = strip.lo; i < strip.hi; i++){
+                Dcel.HalfEdge h = sortedCells[i].edge;
+                do {
+                    int j = strip.site(h.twin);
+                    if(j >= 0 && owner[j] != s && !collapsed(h) && strips[owner[j]].find(sortedCells[j], i) == null){
+                        strip.stale = true;
+                        strips[owner[j]].stale = true;
+                        mismatch = true;
+                    }
+                    h = h.next;
+                } while(h != sortedCells[i].edge);
+            }
+        }
+        for(Strip strip : strips){
+            if(strip.stale){
+                strip.stale = false;
+                strip.build(2 * strip.margin);
+            }
+        }
+        return mismatch;
+    }
+
+    /**
+     * @param h (Dcel.HalfEdge): a half-edge of a bounded cell
+     * @return (boolean): true if its two ends are closer than Vector.EPSILON on both axes
+     */
+    private static boolean collapsed(Dcel.HalfEdge h){
+        return Math.abs(h.next.origin.x - h.origin.x) <= Vector.EPSILON
+                && Math.abs(h.next.origin.y - h.origin.y) <= Vector.EPSILON;
+    }
+
+    /**
+     * Merge the strips along their dividing chains:
+     * each half-edge of an own cell whose twin is the cell of a neighbor site is linked to the half-edge of the
+     * actual cell of that site, in the strip owning it. The vertices of the chain are the ones of the strip on the left.
+     */
+    private void merge(){
+
+        shared.clear();
+        for(int s = 0; s < strips.length; s++){
+            Strip strip = strips[s];
+            for(int i = strip.lo; i < strip.hi; i++){
+                Dcel.HalfEdge h = sortedCells[i].edge;
+                do {
+                    int j = strip.site(h.twin);
+                    if(j >= 0 && owner[j] > s){
+                        Dcel.HalfEdge g = strips[owner[j]].find(sortedCells[j], i);
+                        if(g != null){
+                            h.twin = g;
+                            g.twin = h;
+                            shared.put(g.origin, h.next.origin);
+                            shared.put(g.next.origin, h.origin);
+                        }
+                    }
+                    h = h.next;
+                } while(h != sortedCells[i].edge);
+            }
+        }
+
+        // With cocircular sites, a degenerated (zero length) edge may exist in one strip only:
+        // it is left unlinked, hence removed from its cell and its two vertices merged.
+        // Any other unlinked edge is a mismatch of the strips, already built again by rebuildMismatches
+        for(int s = 0; s < strips.length; s++){
+            Strip strip = strips[s];
+            for(int i = strip.lo; i < strip.hi; i++){
+                VoronoiCell cell = sortedCells[i];
+                Dcel.HalfEdge h = cell.edge;
+                int count = 0;
+                do { count++; h = h.next; } while(h != cell.edge);
+                for(int k = 0; k < count; k++, h = h.next){
+                    int j = strip.site(h.twin);
+                    if(j >= 0 && owner[j] != s && h.next != h.prev){
+                        if(!collapsed(h))
+                            throw new IllegalStateException("The strips disagree on the edge of the cell of site "
+                                    + inputIndex[i]);
+                        h.prev.next = h.next;
+                        h.next.prev = h.prev;
+                        shared.put(h.next.origin, h.origin);
+                        if(cell.edge == h)
+                            cell.edge = h.next;
+                    }
+                }
+            }
+        }
+
+        // Share the vertices of the chains (a vertex may be on the chains of several strips)
+        if(shared.isEmpty())
+            return;
+        for(int i = 0; i < size; i++){
+            Dcel.HalfEdge h = sortedCells[i].edge;
+            do {
+                Dcel.Vertex v = h.origin;
+                Dcel.Vertex w;
+                while((w = shared.get(v)) != null && w != v)
+                    v = w;
+                h.origin = v;
+                h = h.next;
+            } while(h != sortedCells[i].edge);
+        }
+    }
+
+
+    /// Strips
+
+    /** A strip of sites with its sub-diagram */
+    private final class Strip {
+
+        /// First (inclusive) and last (exclusive) own sorted sites
+        int lo, hi;
+        /// Sorted index of each site of the sub-diagram: the own sites first, then the neighbor ones
+        int[] sites = new int[0];
+        /// The sub-diagram, recycled from one build to the next
+        Voronoi diagram;
+        /// Margin of the last build, and mark of a strip to build again with a doubled margin
+        double margin;
+        boolean stale;
+        /// The sites of the sub-diagram
+        private final List<Vector> subset = new ArrayList<>();
+
+        /**
+         * Build the sub-diagram of the strip, doubling the margin until all the own cells are exact
+         * @param margin (double): the initial margin around the own sites
+         */
+        void build(double margin){
+            int n = size;
+            while(true){
+                double left = xs[lo] - margin;
+                double right = xs[hi - 1] + margin;
+                int from = lowerBound(left);
+                int to = upperBound(right);
+
+                // Own sites first so that the own cells are the first ones
+                subset.clear();
+                if(sites.length < to - from)
+                    sites = new int[to - from];
+                int k = 0;
+                for(int i = lo; i < hi; i++){ subset.add(sorted[i]); sites[k++] = i; }
+                for(int i = from; i < lo; i++){ subset.add(sorted[i]); sites[k++] = i; }
+                for(int i = hi; i < to; i++){ subset.add(sorted[i]); sites[k++] = i; }
+
+                if(diagram == null)
+                    diagram = new Voronoi.Builder(box).build(subset);
+                else
+                    diagram.reset(subset);
+
+                boolean allLeft = from == 0, allRight = to == n;
+                if((allLeft && allRight) || exact(allLeft ? Double.NEGATIVE_INFINITY : left, allRight ? Double.POSITIVE_INFINITY : right)){
+                    this.margin = margin;
+                    return;
+                }
+                margin *= 2;
+            }
+        }
+
+        /**
+         * Check that the own cells are exact
+         * @param left (double): all the sites with a greater x-coordinate are into the sub-diagram
+         * @param right (double): all the sites with a lower x-coordinate are into the sub-diagram
+         * @return (boolean): true if, for each vertex of each own cell, the empty circle centered at it
+         * lies between left and right
+         */
+        private boolean exact(double left, double right){
+            List<VoronoiCell> subCells = diagram.getCells();
+            for(int k = 0; k < hi - lo; k++){
+                VoronoiCell cell = subCells.get(k);
+                Vector p = cell.getP();
+                Dcel.HalfEdge h = cell.edge;
+                do {
+                    double x = h.origin.x, y = h.origin.y;
+                    double r = Math.sqrt((x - p.x) * (x - p.x) + (y - p.y) * (y - p.y));
+                    if(x - r < left || x + r > right)
+                        return false;
+                    h = h.next;
+                } while(h != cell.edge);
+            }
+            return true;
+        }
+
+        /**
+         * @param twin (Dcel.HalfEdge): the twin of a half-edge of an own cell, may be null
+         * @return (int): the sorted index of the site of its cell, -1 if null or already linked to another strip
+         */
+        int site(Dcel.HalfEdge twin){
+            if(twin == null)
+                return -1;
+            int id = twin.face.id;
+            return id < diagram.getCells().size() && diagram.getCells().get(id) == twin.face ? sites[id] : -1;
+        }
+
+        /**
+         * Find the half-edge of an own cell whose twin is the cell of the given site
+         * @param cell (VoronoiCell): the own cell
+         * @param site (int): the sorted index of the neighbor site
+         * @return (Dcel.HalfEdge): the half-edge, null if none
+         */
+        Dcel.HalfEdge find(VoronoiCell cell, int site){
+            Dcel.HalfEdge h = cell.edge;
+            do {
+                if(site(h.twin) == site)
+                    return h;
+                h = h.next;
+            } while(h != cell.edge);
+            return null;
+        }
+    }
+
+    /**
+     * @param x (double): a x-coordinate
+     * @return (int): the first sorted site whose x-coordinate is greater or equal to x
+     */
+    private int lowerBound(double x){
+        int lo = 0, hi = size;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(xs[mid] < x) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @param x (double): a x-coordinate
+     * @return (int): the first sorted site whose x-coordinate is strictly greater than x
+     */
+    private int upperBound(double x){
+        int lo = 0, hi = size;
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(xs[mid] <= x) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Build a range of strips, splitting it in parallel tasks */
+    private final class StripTask extends RecursiveAction {
+
+        private final int from, to;
+        private final double margin;
+
+        /**
+         * Default StripTask constructor
+         * @param from (int): first strip of the range (inclusive)
+         * @param to (int): last strip of the range (exclusive)
+         * @param margin (double): the initial margin around the own sites of each strip
+         */
+        StripTask(int from, int to, double margin){
+            this.from = from;
+            this.to = to;
+            this.margin = margin;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1){
+                strips[from].build(margin);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new StripTask(from, mid, margin), new StripTask(mid, to, margin));
+        }
+    }
+}
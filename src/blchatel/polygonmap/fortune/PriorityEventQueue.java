@@ -0,0 +1,66 @@
+package blchatel.polygonmap.fortune;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+
+/**
+ * Event queue backed by a java.util.PriorityQueue
+ * Note: the removal of a circle event is a linear scan of the queue
+ * @see EventQueue
+ */
+final class PriorityEventQueue implements EventQueue {
+
+    /** Event comparator sorting event by decreasing y*/
+    private static final Comparator<Event> priority = (event1, event2) -> {
+        double y1 = event1.getY(), y2 = event2.getY();
+
+        if (y1 == y2) return Double.compare(event1.getX(), event2.getX());
+        else if (y1 > y2) return -1;
+        return 1;
+    };
+
+    /// The underlying queue
+    private final PriorityQueue<Event> events;
+
+    /**
+     * Default PriorityEventQueue constructor
+     * @param capacity (int): the expected number of events
+     */
+    PriorityEventQueue(int capacity){
+        events = new PriorityQueue<>(Math.max(1, capacity), priority);
+    }
+
+
+    /// PriorityEventQueue implements EventQueue
+
+    @Override
+    public void add(Event e) {
+        events.add(e);
+    }
+
+    @Override
+    public Event poll() {
+        return events.poll();
+    }
+
+    @Override
+    public void remove(CircleEvent e) {
+        events.remove(e);
+    }
+
+    @Override
+    public void clear() {
+        events.clear();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return events.size();
+    }
+}
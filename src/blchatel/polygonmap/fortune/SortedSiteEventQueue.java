@@ -0,0 +1,133 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * Event queue which keeps the site events apart from the circle events:
+ * - The sites are collected, then sorted once (parallel sort on decreasing y then increasing x) and their
+ *   keys copied into primitive arrays which are consumed through a cursor
+ * - Only the circle events go into an indexed heap, which hence holds O(beach line) entries instead of O(n)
+ * Both sources are merged on each poll.
+ * Note: all the sites must be added before the first poll
+ * @see EventQueue
+ * @see IndexedEventQueue
+ */
+final class SortedSiteEventQueue implements EventQueue {
+
+    /** Site order of the sweep: decreasing y then increasing x */
+    private static final Comparator<VoronoiCell> order = (c1, c2) -> {
+        Vector p1 = c1.getP();
+        Vector p2 = c2.getP();
+
+        if (p1.y == p2.y) return Double.compare(p1.x, p2.x);
+        else if (p1.y > p2.y) return -1;
+        return 1;
+    };
+
+    /// The sites and their keys, in sweep order once sorted
+    private VoronoiCell[] sites;
+    private double[] ys;
+    private double[] xs;
+    /// Number of sites and position of the next site to poll (-1 while the sites are not sorted)
+    private int siteCount;
+    private int cursor;
+    /// The circle events
+    private final IndexedEventQueue circles;
+
+    /**
+     * Default SortedSiteEventQueue constructor
+     * @param capacity (int): the expected number of sites
+     */
+    SortedSiteEventQueue(int capacity){
+        sites = new VoronoiCell[Math.max(16, capacity)];
+        siteCount = 0;
+        cursor = -1;
+        // The beach line size is usually far below the number of sites
+        circles = new IndexedEventQueue((int) Math.sqrt(capacity));
+    }
+
+    /** Sort the collected sites and copy their keys into the primitive arrays */
+    private void sortSites(){
+        Arrays.parallelSort(sites, 0, siteCount, order);
+        if(ys == null || ys.length < siteCount){
+            ys = new double[sites.length];
+            xs = new double[sites.length];
+        }
+        for(int i = 0; i < siteCount; i++){
+            Vector p = sites[i].getP();
+            ys[i] = p.y;
+            xs[i] = p.x;
+        }
+        cursor = 0;
+    }
+
+    /** @return (boolean): true if the next event is the site under the cursor, false if it is the top circle event */
+    private boolean siteFirst(){
+        if(cursor >= siteCount)
+            return false;
+        if(circles.isEmpty())
+            return true;
+        double y = circles.peekY();
+        return ys[cursor] > y || (ys[cursor] == y && xs[cursor] < circles.peekX());
+    }
+
+
+    /// SortedSiteEventQueue implements EventQueue
+
+    @Override
+    public void add(Event e) {
+        if(e instanceof CircleEvent){
+            circles.add(e);
+            return;
+        }
+        if(cursor >= 0)
+            throw new IllegalStateException("Sites cannot be added once the sweep has started");
+        if(siteCount == sites.length)
+            sites = Arrays.copyOf(sites, 2*siteCount);
+        sites[siteCount++] = (VoronoiCell) e;
+    }
+
+    @Override
+    public Event poll() {
+        if(cursor < 0)
+            sortSites();
+        if(siteFirst()){
+            VoronoiCell site = sites[cursor];
+            sites[cursor++] = null;
+            return site;
+        }
+        return circles.poll();
+    }
+
+    @Override
+    public void remove(CircleEvent e) {
+        circles.remove(e);
+    }
+
+    @Override
+    public void replace(CircleEvent old, CircleEvent e) {
+        circles.replace(old, e);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(sites, 0, siteCount, null);
+        siteCount = 0;
+        cursor = -1;
+        circles.clear();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (cursor < 0 ? siteCount == 0 : cursor >= siteCount) && circles.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return siteCount - Math.max(cursor, 0) + circles.size();
+    }
+}
@@ -1,14 +1,14 @@
 package blchatel.polygonmap.fortune;// the voronoi diagram(a set of halfEdges) for a set of Vectors(sites)
 
-import blchatel.polygonmap.geometry2d.Edge;
-import blchatel.polygonmap.geometry2d.HalfEdge;
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.Predicates;
 import blchatel.polygonmap.geometry2d.Rectangle;
 import blchatel.polygonmap.geometry2d.Vector;
 import blchatel.polygonmap.swing.DrawSupport;
-import blchatel.polygonmap.swing.Drawable;
 import blchatel.polygonmap.swing.SwingShape;
 
 import java.awt.*;
+import java.awt.geom.Path2D;
 import java.util.*;
 import java.util.List;
 
@@ -20,104 +20,216 @@ import java.util.List;
  * @see Event
  * @see BeachLine
  * @see VoronoiCell
- * @see Drawable
+ * @see VoronoiDiagram
  * @see DrawSupport
  */
-public class Voronoi implements Drawable{
+public class Voronoi implements VoronoiDiagram {
 
-	/// Box of voronoi
-	private final Rectangle box;
+	/// Convex clipping polygon of the diagram (counter-clockwise), the box by default
+	private final PointArray clip;
     /// Cells of the diagram
-    private Set<VoronoiCell> cells;
-	/// Edges of the diagram
-	private List<Edge> edges;
+    private final List<VoronoiCell> cells;
+	/// Ends of the edges of the diagram, computed on demand for drawing
+	private PointArray segments;
+	/// Doubly-connected edge list of the diagram
+	private final Dcel dcel;
 	/// Priority queue representing the sweep line
-	private PriorityQueue<Event> events;
+	private final EventQueue events;
 	/// Binary search tree representing the beach line
-    private BeachLine beachLine;
+    private final BeachLine beachLine;
+	/// Output of the circle computation: center x, bottom y (i.e. the event y) and radius
+	private final double[] circle;
 	/// Current y-coordinate of sweep line
 	private double sweepY;
 
+	/// Pools of cells and circle events recycled by each new computation, and number of records in use
+	private final List<VoronoiCell> cellPool;
+	private final List<CircleEvent> circlePool;
+	private int circleCount;
+
 	/**
 	 * Create and generate a Voronoi Diagram for given site points
 	 * @param sites (Set of Vector): the site points
 	 */
 	public Voronoi(Set<Vector> sites, Rectangle box) {
+		this(sites, box, true, EventQueue.Type.SORTED_SITES);
+	}
+
+	/**
+	 * Create and generate a Voronoi Diagram for given site points
+	 * @param sites (Set of Vector): the site points
+	 * @param box (Rectangle): the bounding box of the diagram
+	 * @param queueType (EventQueue.Type): the implementation of the event queue
+	 */
+	public Voronoi(Set<Vector> sites, Rectangle box, EventQueue.Type queueType) {
+		this(sites, box, true, queueType);
+	}
 
-		// generate the box vertices and edges
-		this.box = box;
-		// Init list for edges and event
+	/**
+	 * Create and generate a Voronoi Diagram for given site points
+	 * @param sites (Collection of Vector): the distinct site points
+	 * @param box (Rectangle): the bounding box of the diagram
+	 * @param balanced (boolean): false to use the plain (unbalanced) beach line tree, for benchmark only
+	 * @param queueType (EventQueue.Type): the implementation of the event queue
+	 */
+	Voronoi(Collection<Vector> sites, Rectangle box, boolean balanced, EventQueue.Type queueType) {
+		this(sites, box, null, balanced, queueType);
+	}
+
+	/**
+	 * Create and generate a Voronoi Diagram for given site points
+	 * @param sites (Collection of Vector): the distinct site points
+	 * @param box (Rectangle): the bounding box of the diagram
+	 * @param clip (PointArray): the convex clipping polygon in counter-clockwise order, lying into the box
+	 *             and containing the sites, null to clip by the box
+	 * @param balanced (boolean): false to use the plain (unbalanced) beach line tree, for benchmark only
+	 * @param queueType (EventQueue.Type): the implementation of the event queue
+	 */
+	Voronoi(Collection<Vector> sites, Rectangle box, PointArray clip, boolean balanced, EventQueue.Type queueType) {
+
+		// The box vertices, in counter-clockwise order
+		if(clip == null){
+			clip = new PointArray(4);
+			clip.add(box.bl);
+			clip.add(box.br);
+			clip.add(box.tr);
+			clip.add(box.tl);
+		}
+		this.clip = clip;
+		// Init the structures once, they are recycled by each computation
+		int n = sites.size();
+		this.cells = new ArrayList<>(n);
+		this.cellPool = new ArrayList<>(n);
+		this.circlePool = new ArrayList<>(2*n);
+		this.events = EventQueue.create(queueType, n);
+		this.beachLine = new BeachLine(2*n, balanced);
+		this.circle = new double[3];
+		this.dcel = new Dcel(n);
 		voronoiDiagram(sites);
 	}
 
+	/**
+	 * Recompute the diagram in place for new site points.
+	 * The cells, the beach line nodes, the events and the doubly-connected edge list records of the previous
+	 * diagram are recycled, hence the previous cells must not be used anymore.
+	 * @param sites (Collection of Vector): the distinct site points
+	 */
+	@Override
+	public void reset(Collection<Vector> sites) {
+		voronoiDiagram(sites);
+	}
 
-    /** Event comparator sorting event by decreasing y*/
-	private static final Comparator<Event> priority = (event1, event2) -> {
-	    Vector p1 = event1.getP();
-	    Vector p2 = event2.getP();
 
-	    if (p1.y == p2.y) return Double.compare(p1.x, p2.x);
-        else if (p1.y > p2.y) return -1;
-        return 1;
-    };
+	/**
+	 * Builder of reusable Voronoi diagrams: build a first diagram, then call reset on it
+	 * to compute the following ones (e.g. along a Lloyd relaxation) without re-allocating its structures.
+	 */
+	public static class Builder implements VoronoiEngine {
+
+		/// Box of the diagrams
+		private final Rectangle box;
+		/// Implementation of the event queue
+		private EventQueue.Type queueType = EventQueue.Type.SORTED_SITES;
+		/// Indicate if the beach line is kept balanced
+		private boolean balanced = true;
+		/// Convex clipping polygon of the diagrams, null for the box
+		private PointArray clip;
+
+		/**
+		 * Default Builder constructor
+		 * @param box (Rectangle): the bounding box of the diagrams
+		 */
+		public Builder(Rectangle box) {
+			this.box = box;
+		}
+
+		/**
+		 * Event queue setter
+		 * @param queueType (EventQueue.Type): the implementation of the event queue
+		 * @return (Builder): this builder
+		 */
+		public Builder queue(EventQueue.Type queueType) {
+			this.queueType = queueType;
+			return this;
+		}
+
+		/**
+		 * Clipping polygon setter: the diagrams are clipped by a convex polygon instead of the box
+		 * @param polygon (PointArray): the vertices of the simple polygon, in counter-clockwise order, lying into
+		 *                the box and containing all the sites, copied
+		 * @return (Builder): this builder
+		 */
+		public Builder clip(PointArray polygon) {
+			int n = polygon.size();
+			if(n < 3)
+				throw new IllegalArgumentException("The clipping polygon needs at least three vertices");
+			// Every turn is to the left and their angles sum to one full turn: a star polygon, whose turns are
+			// to the left too, winds several times around its center
+			double turning = 0;
+			for(int i = 0; i < n; i++){
+				int j = (i + 1) % n, k = (i + 2) % n;
+				if(Predicates.orient2d(polygon.x(i), polygon.y(i), polygon.x(j), polygon.y(j), polygon.x(k), polygon.y(k)) <= 0)
+					throw new IllegalArgumentException("The clipping polygon must be convex and counter-clockwise");
+				double ux = polygon.x(j) - polygon.x(i), uy = polygon.y(j) - polygon.y(i);
+				double vx = polygon.x(k) - polygon.x(j), vy = polygon.y(k) - polygon.y(j);
+				turning += Math.atan2(ux * vy - uy * vx, ux * vx + uy * vy);
+			}
+			if(turning > 3 * Math.PI)
+				throw new IllegalArgumentException("The clipping polygon must be simple");
+			// Own copy, the caller may change its array afterwards
+			this.clip = new PointArray(n);
+			for(int i = 0; i < n; i++)
+				this.clip.add(polygon.x(i), polygon.y(i));
+			return this;
+		}
+
+		/**
+		 * Beach line setter
+		 * @param balanced (boolean): false to use the plain (unbalanced) beach line tree, for benchmark only
+		 * @return (Builder): this builder
+		 */
+		Builder balanced(boolean balanced) {
+			this.balanced = balanced;
+			return this;
+		}
+
+		/**
+		 * Create and generate a Voronoi Diagram for given site points
+		 * @param sites (Collection of Vector): the distinct site points
+		 * @return (Voronoi): the new diagram
+		 */
+		@Override
+		public Voronoi build(Collection<Vector> sites) {
+			return new Voronoi(sites, box, clip, balanced, queueType);
+		}
+	}
 
 
     /**
      * Compute the voronoi diagram for given set point O(n log n)
-     * @param sites (Set of Vector): the site points
+     * @param sites (Collection of Vector): the site points
      */
-    private void voronoiDiagram(Set<Vector> sites) {
-
-        VoronoiCell tl=null, tr=null, bl=null, br = null;
-        double tlBestD = Double.MAX_VALUE, trBestD = Double.MAX_VALUE, blBestD = Double.MAX_VALUE, brBestD = Double.MAX_VALUE;
+    private void voronoiDiagram(Collection<Vector> sites) {
 
         // Initialize the events queue with all site events, initialize an empty Beach Line status
         // structure and an empty doubly-connected edges list.
-        events = new PriorityQueue<>(priority);
-        cells = new HashSet<>(sites.size());
+        events.clear();
+        beachLine.clear();
+        dcel.clear();
+        cells.clear();
+        circleCount = 0;
+        segments = null;
         for(Vector p : sites) {
-            VoronoiCell voronoiCell = new VoronoiCell(p);
+            VoronoiCell voronoiCell = newCell(p);
             events.add(voronoiCell);
             cells.add(voronoiCell);
-
-            // Deal with the four corner that need to be added to correct cell
-            double tlD = p.subtract(box.tl).getSqrLength();
-            double trD = p.subtract(box.tr).getSqrLength();
-            double blD = p.subtract(box.bl).getSqrLength();
-            double brD = p.subtract(box.br).getSqrLength();
-
-            if(br == null){
-                tl = voronoiCell; tlBestD = tlD;
-                tr = voronoiCell; trBestD = trD;
-                bl = voronoiCell; blBestD = blD;
-                br = voronoiCell; brBestD = brD;
-            }
-            else if(tlD < tlBestD){
-                tl = voronoiCell; tlBestD = tlD;
-            }
-            else if(trD < trBestD){
-                tr = voronoiCell; trBestD = trD;
-            }
-            else if(blD < blBestD){
-                bl = voronoiCell; blBestD = blD;
-            }
-            else if(brD < brBestD){
-                br = voronoiCell; brBestD = brD;
-            }
         }
-        assert tl != null;
-        tl.addCorner(new Vector(box.x, box.y+box.h));
-        tr.addCorner(new Vector(box.x+box.w, box.y+box.h));
-        bl.addCorner(new Vector(box.x, box.y));
-        br.addCorner(new Vector(box.x+box.w, box.y));
-
-        beachLine = null;
-        edges = new ArrayList<>();
+        beachLine.setSites(cells);
 
         while(!events.isEmpty()) {
             // Remove the event with largest y-coordinate from events.
-            Event e = events.remove();
-            sweepY = e.getP().y;
+            Event e = events.poll();
+            sweepY = e.getY();
             if(e instanceof VoronoiCell) {
                 handleSite((VoronoiCell) e);
             }else{
@@ -125,17 +237,56 @@ public class Voronoi implements Drawable{
             }
         }
 
-        // The internal nodes still present in the beach line correspond to the half-infinite edges of the Voronoi diagram.
-        // Compute a bounding box that contains all vertices of the Voronoi diagram in its interior,
-        // and attach the half-infinite edges to the bounding box by updating the doubly-connected edge list appropriately.
-        assert beachLine != null;
-        edges.addAll(beachLine.endEdges());
-
-        // Traverse the half-edges of the doubly-connected edge list to add the cell
-        // records and the pointers to and from them.
-        // TODO if necessary
+        // The internal nodes still present in the beach line correspond to the half-infinite edges of the Voronoi diagram
+        // (their half-edges have no origin on one side at least).
+        // Clip the diagram by the polygon (the box by default) and attach the half-infinite edges to its boundary,
+        // which also closes the boundary cells in the doubly-connected edge list.
+        dcel.bound(clip, cells);
 	}
 
+    /**
+     * Take a new cell from the pool
+     * @param site (Vector): the cell site
+     * @return (VoronoiCell): the empty cell
+     */
+    private VoronoiCell newCell(Vector site) {
+        int i = cells.size();
+        VoronoiCell cell;
+        if(i < cellPool.size()) {
+            cell = cellPool.get(i);
+            cell.reset(site);
+        }
+        else {
+            cell = new VoronoiCell(site);
+            cellPool.add(cell);
+        }
+        cell.id = i;
+        return cell;
+    }
+
+    /**
+     * Take a new circle event from the pool
+     * @param x (double): x-coordinate of the bottom most circle point
+     * @param y (double): y-coordinate of the bottom most circle point
+     * @param radius (double): the circle radius
+     * @param node (int): the arc disappearing at this event
+     * @return (CircleEvent): the event
+     */
+    private CircleEvent newCircleEvent(double x, double y, double radius, int node) {
+        CircleEvent e;
+        if(circleCount < circlePool.size()) {
+            e = circlePool.get(circleCount);
+            e.set(x, y, node);
+        }
+        else {
+            e = new CircleEvent(x, y, node);
+            circlePool.add(e);
+        }
+        circleCount++;
+        e.radius = radius;
+        return e;
+    }
+
 
     /**
      * Handle site event: new half-edge are initialized
@@ -144,37 +295,46 @@ public class Voronoi implements Drawable{
 	private void handleSite(VoronoiCell cell) {
 
         // If the beach line is empty, insert pi into it (the beach line consists of a single leaf storing pi) and return.
-        if(beachLine == null) {
-            beachLine = new BeachLine(box, cell);
+        if(beachLine.isEmpty()) {
+            beachLine.insertRoot(cell.id);
             return;
         }
         // Otherwise, continue
 
         // Search in the beach line for the arc alpha vertically above pi.
-        BeachLine.Arc alpha = beachLine.getArcAbove(cell.getP());
+        int alpha = beachLine.getArcAbove(cell.getX(), cell.getY());
 
         // If the leaf representing alpha has a pointer to a circle event in events, then this circle event is a
         // false alarm and it must be deleted from events.
-        if(alpha.event != null) {
-            events.remove(alpha.event);
-            alpha.event = null;
+        CircleEvent falseAlarm = beachLine.event(alpha);
+        if(falseAlarm != null) {
+            events.remove(falseAlarm);
+            beachLine.setEvent(alpha, null);
         }
 
         // - Replace the leaf of the beach line that represents alpha with a subtree having three leaves.
         // - Store the tuple <pj, pi> and <pi, pj> representing the new breakpoints at the two new internal nodes.
         // - Create new half-edge records in the Voronoi diagram structure for th edge separating V(pi) and V(pj),
         //   which will be traced out by the two new breakpoints.
-        BeachLine.Arc[] arcs = beachLine.split(alpha, cell);
-
-        // Perform re-balancing operations on the beach line if necessary.
-        // TODO
+        // The beach line performs its own re-balancing operations.
+        VoronoiCell above = cells.get(beachLine.cell(alpha));
+        Dcel.HalfEdge edge = dcel.createEdge(above, cell);
+
+        // Degenerated case: alpha site is on the sweep line too (the first sites share the same y-coordinate),
+        // the new arc is only put on the right of alpha
+        if(above.getY() == cell.getY()) {
+            checkCircleEvent(beachLine.append(alpha, cell.id, edge));
+            return;
+        }
+        int[] arcs = beachLine.split(alpha, cell.id, edge);
+        int left = arcs[0], right = arcs[1];
 
         // Check the triple of consecutive arcs where the new arc for pi is the left arc
         // to see if the breakpoints converge. If so, insert the circle event into events and
         // add pointers between the node in the beach line and the node in events. Do the same for the
         // triple where the new arc is the right arc.
-		checkCircleEvent(arcs[0]);
-		checkCircleEvent(arcs[1]);
+		checkCircleEvent(left);
+		checkCircleEvent(right);
 	}
 
 
@@ -184,64 +344,58 @@ public class Voronoi implements Drawable{
      */
 	private void handleCircle(CircleEvent event) {
 
-        BeachLine.Arc gamma = event.arc;
-        Vector cT = event.getP();
+        int gamma = event.node;
 
         // - Delete all circle events involving alpha from events;
         //   these can be found using the pointers from the predecessor and the successor of gama in the beach line.
         //   (The circle event where alpha is the middle arc is currently being handled, and has already been deleted from events.)
-        BeachLine.BreakPoint xl = gamma.getLeftBreakPoint();
-        BeachLine.BreakPoint xr = gamma.getRightBreakPoint();
-        BeachLine.Arc predecessor = xl.getLeftArc();
-        BeachLine.Arc successor = xr.getRightArc();
-
-        if (predecessor.event != null) {
-            events.remove(predecessor.event);
-            predecessor.event = null;
+        int xl = beachLine.leftBreakPoint(gamma);
+        int xr = beachLine.rightBreakPoint(gamma);
+        int predecessor = beachLine.leftArc(xl);
+        int successor = beachLine.rightArc(xr);
+
+        CircleEvent e = beachLine.event(predecessor);
+        if(e != null) {
+            events.remove(e);
+            beachLine.setEvent(predecessor, null);
         }
-        if (successor.event != null) {
-            events.remove(successor.event);
-            successor.event = null;
+        e = beachLine.event(successor);
+        if(e != null) {
+            events.remove(e);
+            beachLine.setEvent(successor, null);
         }
 
         // - Add the center of the circle causing the event as a vertex record to the doubly-connected edge list.
-        Vector center = new Vector(cT.x, beachLine.getY(gamma.cell.getP(), cT.x, sweepY));
-        //System.out.println(predecessor.cell.getP()+", "+gamma.cell.getP()+", "+successor.cell.getP());
-
-        Edge el = boxedEdge(xl.halfEdgeHead(), center);
-        Edge er = boxedEdge(xr.halfEdgeHead(), center);
-
-        if(el != null) {
-            edges.add(el);
-            xl.left.addEdge(el);
-            xl.right.addEdge(el);
-        }
-        if(er != null) {
-            edges.add(er);
-            xr.left.addEdge(er);
-            xr.right.addEdge(er);
-        }
+        Dcel.Vertex vertex = dcel.createVertex(event.getX(), event.getY() + event.radius);
 
+        // The two edges traced out by xl and xr end at the vertex: the half-edges of the predecessor and of
+        // the successor leave it while the ones of gamma, consecutive around the vertex, respectively enter and leave it.
+        beachLine.leftEdge(xl).origin = vertex;
+        beachLine.leftEdge(xr).origin = vertex;
+        Dcel.link(beachLine.rightEdge(xl), beachLine.leftEdge(xr));
 
         // - Create two half-edge records corresponding to the new breakpoint of the beach line.
         //   Gamma is bounded by two break points: xl and xr
         //   When gamma is removed from the beach line, one break point (the lowest in the tree) is also removed
         //   and we reuse the other (the highest) as new break point
-        BeachLine.BreakPoint higher = beachLine.determineHigher(gamma, xl, xr);
-        Vector predSucc = successor.cell.getP().subtract(predecessor.cell.getP());
-        HalfEdge edge = new HalfEdge(center, new Vector(predSucc.y, -predSucc.x));
-        higher.set(edge, predecessor.cell, successor.cell);
+        int higher = beachLine.determineHigher(gamma, xl, xr);
+        int pred = beachLine.cell(predecessor);
+        int succ = beachLine.cell(successor);
+        Dcel.HalfEdge predEdge = dcel.createEdge(cells.get(pred), cells.get(succ));
+        Dcel.HalfEdge succEdge = predEdge.twin;
 
         // Set the pointers between them appropriately.
         // Attach the three new records to the half-edge records that end at the vertex.
+        succEdge.origin = vertex;
+        Dcel.link(predEdge, beachLine.leftEdge(xl));
+        Dcel.link(beachLine.rightEdge(xr), succEdge);
+        beachLine.setBreakPoint(higher, pred, succ, predEdge, succEdge);
 
         // - Delete the leaf gamma that represents the disappearing arc alpha from the beach line.
         // - Update the tuple representing the breakpoints at the internal nodes.
+        // - Perform re-balancing operations on the beach line (done by the beach line itself).
         beachLine.remove(gamma);
 
-        // - Perform re-balancing operations on the beach line if necessary.
-        // TODO
-
         // Check the new triple of consecutive arcs that has the former left neighbor of alpha as its middle arc
         // to see if the two breakpoints of the triple converge.
         // If so, insert the corresponding circle event into events
@@ -252,92 +406,66 @@ public class Voronoi implements Drawable{
 
     /**
      * Detects and adds circle event if sites a, b, c lie on the same circle
-     * @param b (Arc): b-arc between a and c
-     */
-    private void checkCircleEvent(BeachLine.Arc b) {
-
-	    // Find in the beach line the break point bounding the arc b
-		BeachLine.BreakPoint lbp = b.getLeftBreakPoint();
-		BeachLine.BreakPoint rbp = b.getRightBreakPoint();
-		if(lbp == null || rbp == null) return;
-
-		// Find in the beach line the left and right arc of b
-		BeachLine.Arc a = lbp.getLeftArc();
-		BeachLine.Arc c = rbp.getRightArc();
-
-		// If one arc is null or if left and right are from same site, circle event cannot exists
-		if(a == null || c == null || a.cell.equals(c.cell)) return;
-
-		Vector bP = b.cell.getP();
-        // The same if the point are not ccw
-		if(ccw(a.cell.getP(), bP, c.cell.getP()) > 0) return;
-		
-		// halfEdges will intersect to form a vertex for a circle event
-		Vector[] intersections = lbp.intersectWith(rbp);
-        if(intersections.length == 0 ) return;
-		Vector start = intersections[0];
-
-		// compute radius
-		double dx = bP.x - start.x;
-		double dy = bP.y - start.y;
-		double d = Math.sqrt((dx*dx) +(dy*dy));
-		if(start.y - d > sweepY) return; // must be after sweep line, new event in y
-
-		Vector ep = new Vector(start.x, start.y - d);
-
-		// add circle event
-		CircleEvent e = new CircleEvent(ep, b);
-		b.event = e;
-		events.add(e);
-	}
-
-
-    /**
-     * Determine if three points make a counter-clockwise turn
-     * @param a (Vector): first point
-     * @param b (Vector): second point
-     * @param c (Vector): third
-     * @return (int): > 0 if three points make a counter-clockwise turn, < 0 if clockwise and 0 if collinear
+     * @param b (int): b-arc between a and c
      */
-	private static double ccw(Vector a, Vector b, Vector c) {
-
-	    double det = b.x*c.y + a.x*b.y + a.y*c.x - b.x*a.y - c.x*b.y - c.y*a.x;
-	    if(Math.abs(det)<Vector.EPSILON) return 0;
-	    return det;
+    private void checkCircleEvent(int b) {
+
+        // Find in the beach line the break point bounding the arc b
+        int lbp = beachLine.leftBreakPoint(b);
+        int rbp = beachLine.rightBreakPoint(b);
+        if(lbp == BeachLine.NIL || rbp == BeachLine.NIL) return;
+
+        // Find in the beach line the sites of the left and right arcs of b:
+        // if they are the same site, circle event cannot exists
+        int a = beachLine.cell(beachLine.leftArc(lbp));
+        int c = beachLine.cell(beachLine.rightArc(rbp));
+        if(a == c) return;
+
+        // The breakpoints converge to the circle center only if the sites make a clockwise turn
+        if(!circle(cells.get(a).getP(), cells.get(beachLine.cell(b)).getP(), cells.get(c).getP())) return;
+
+        // add circle event at the bottom of the circle (replacing the previous one of b if any)
+        CircleEvent e = newCircleEvent(circle[0], circle[1], circle[2], b);
+        CircleEvent old = beachLine.event(b);
+        if(old != null)
+            events.replace(old, e);
+        else
+            events.add(e);
+        beachLine.setEvent(b, e);
     }
 
 
     /**
-     * Compute the boxed version of an edge (i.e the sub-edge that fit the box)
-     * Note: if an edge end is not contained in the box, then this end is replaced by
-     * intersection between the edge and the box boundary
-     * @param head (Vector): optimal head of the edge
-     * @param tail (Vector): optimal tail of the edge
-     * @return (Edge): the boxed edge
+     * Compute the circle through the sites of three consecutive arcs if their breakpoints converge
+     * The convergence is decided by the exact orientation of the sites (clockwise), and the circle is computed
+     * relative to the middle site. Converging breakpoints meet on the sweep line or below it, hence no test against
+     * the sweep line is needed: a center rounded slightly above it is only polled right away.
+     * @param a (Vector): the site of the left arc
+     * @param b (Vector): the site of the middle arc
+     * @param c (Vector): the site of the right arc
+     * @return (boolean): true if the breakpoints converge, the circle center x, bottom y and radius being written into circle
      */
-    private Edge boxedEdge(Vector head, Vector tail){
-
-	    boolean h = box.contains(head);
-	    boolean t = box.contains(tail);
-
-	    if(!h && !t) return null;
-	    if(h && t) return new Edge(head, tail);
-
-	    Vector inside = h ? head : tail;
-	    Vector outside = h ? tail : head;
-
-        HalfEdge half = new HalfEdge(inside, outside.subtract(inside));
-        Vector[] intersections = half.intersectWith(box);
-
-        if(intersections.length == 0){
-
-            System.out.println(head +"->"+ box.contains(head));
-            System.out.println(tail +"->"+ box.contains(tail));
-            System.out.println(half);
-
-        }
-
-        return new Edge(inside, intersections[0]);
+    private boolean circle(Vector a, Vector b, Vector c) {
+
+        if(Predicates.orient2d(a, b, c) >= 0) return false;
+
+        double ax = a.x - b.x, ay = a.y - b.y;
+        double cx = c.x - b.x, cy = c.y - b.y;
+        double d = 2*(ax*cy - ay*cx);
+        // Only possible for almost collinear sites: the circle is too far away to be represented
+        if(!(d > 0)) return false;
+
+        double a2 = ax*ax + ay*ay;
+        double c2 = cx*cx + cy*cy;
+        double ux = (cy*a2 - ay*c2)/d;
+        double uy = (ax*c2 - cx*a2)/d;
+        double r = Math.sqrt(ux*ux + uy*uy);
+        circle[0] = b.x + ux;
+        // Bottom of the circle: uy - r cancels for a large circle above the sites (nearly collinear sites), where
+        // the event must still be ordered with the site events a few ulps away, hence -ux^2 / (uy + r) instead
+        circle[1] = b.y + (uy > 0 ? -ux*ux/(uy + r) : uy - r);
+        circle[2] = r;
+        return true;
     }
 
 
@@ -345,6 +473,7 @@ public class Voronoi implements Drawable{
      * Getter for the cell centroids
      * @return (Set of Vector): the centroids (one for each cell)
      */
+    @Override
     public Set<Vector> cellCentroids() {
 
         Set<Vector> centroids = new HashSet<>(cells.size());
@@ -356,7 +485,19 @@ public class Voronoi implements Drawable{
     }
 
 
-    /// Voronoi implements Drawable
+    /** @return (List of VoronoiCell): the cells of the diagram (unmodifiable), in the order of the given sites */
+    @Override
+    public List<VoronoiCell> getCells() {
+        return Collections.unmodifiableList(cells);
+    }
+
+    /** @return (Dcel): the doubly-connected edge list of the diagram */
+    public Dcel getDcel() {
+        return dcel;
+    }
+
+
+    /// Voronoi implements VoronoiDiagram
 
     @Override
     public void draw(DrawSupport support) {
@@ -365,16 +506,19 @@ public class Voronoi implements Drawable{
 
         support.clearItems();
 
-        for(VoronoiCell cell : cells){
-            support.registerShape(new SwingShape(cell.toPath(), Color.GREEN, 0));
-           // support.registerShape(new SwingShape(cell.getP().toPath(), Color.BLACK, 10));
-        }
+        // A single path for all the cells and another one for all the edges
+        PointArray vertices = new PointArray(6 * cells.size());
+        support.registerShape(new SwingShape(VoronoiCell.toPath(cells, vertices), Color.GREEN, 0));
 
-        for(Edge edge : edges){
-            support.registerShape(new SwingShape(edge.toPath(), null, Color.BLACK, 1, 1, 10));
+        if(segments == null){
+            segments = new PointArray(6 * cells.size());
+            dcel.edges(segments);
         }
+        support.registerShape(new SwingShape(segments.toSegments(), null, Color.BLACK, 1, 1, 10));
 
-        support.registerShape(new SwingShape(box.toPath(), null, Color.BLACK, 1, 1, 20));
+        Path2D boundary = new Path2D.Double();
+        clip.appendPolygon(boundary, 0, clip.size());
+        support.registerShape(new SwingShape(boundary, null, Color.BLACK, 1, 1, 20));
 
         support.refresh();
     }
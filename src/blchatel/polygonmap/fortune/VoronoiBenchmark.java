@@ -0,0 +1,262 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Random;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Simple wall-clock benchmark of the Fortune sweep.
+ * Each scenario is run for an increasing number of sites and print the time normalized by n log n
+ * so that a O(n log n) implementation shows a (roughly) constant last column.
+ * Usage: VoronoiBenchmark [scenario] [maxSites] where scenario is one of: beachline, queue, insert, reuse, parallel, delaunay, edit
+ */
+public class VoronoiBenchmark {
+
+    /// Number of warm up runs and of measured runs for each size
+    private static final int WARMUP = 2;
+    private static final int RUNS = 3;
+
+    /// The bounding box of all the benchmarks
+    private static final Rectangle BOX = new Rectangle(0, 0, 800, 800);
+
+    /** A way to build the diagram to benchmark */
+    private interface Scenario {
+        void run(Set<Vector> sites);
+    }
+
+    /**
+     * Generate uniformly distributed sites
+     * @param n (int): number of sites
+     * @param random (Random): the random generator
+     * @return (Set of Vector): the sites
+     */
+    private static Set<Vector> uniform(int n, Random random){
+        Set<Vector> sites = new HashSet<>(2*n);
+        while(sites.size() < n)
+            sites.add(BOX.sample(random));
+        return sites;
+    }
+
+    /**
+     * Generate sites along the box diagonal (with a small jitter): every new site in sweep order
+     * hits the same end of the beach line, which is the worst case for an unbalanced tree.
+     * @param n (int): number of sites
+     * @param random (Random): the random generator
+     * @return (Set of Vector): the sites
+     */
+    private static Set<Vector> diagonal(int n, Random random){
+        Set<Vector> sites = new HashSet<>(2*n);
+        while(sites.size() < n){
+            double t = random.nextDouble();
+            double jitter = (random.nextDouble() - 0.5) * BOX.w / n;
+            sites.add(new Vector(BOX.x + t * BOX.w + jitter, BOX.y + t * (BOX.h - 1)));
+        }
+        return sites;
+    }
+
+    /**
+     * Generate sites in a thin horizontal strip at the top of the box: the beach line grows with almost every
+     * site before the first circle events happen, hence the sweep is dominated by the site insertions
+     * @param n (int): number of sites
+     * @param random (Random): the random generator
+     * @return (Set of Vector): the sites
+     */
+    private static Set<Vector> strip(int n, Random random){
+        Set<Vector> sites = new HashSet<>(2*n);
+        while(sites.size() < n)
+            sites.add(new Vector(BOX.x + random.nextDouble() * BOX.w, BOX.y + BOX.h - random.nextDouble()));
+        return sites;
+    }
+
+    /**
+     * Time the given scenario and print the result line
+     * @param name (String): the scenario name
+     * @param sites (Set of Vector): the input sites
+     * @param scenario (Scenario): the scenario to time
+     */
+    private static void time(String name, Set<Vector> sites, Scenario scenario){
+        for(int i = 0; i < WARMUP; i++)
+            scenario.run(sites);
+
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < RUNS; i++){
+            long start = System.nanoTime();
+            scenario.run(sites);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        int n = sites.size();
+        System.out.printf("%-28s n=%-9d %10.2f ms %8.2f ns/(n log n)%n",
+                name, n, best / 1e6, best / (n * Math.log(n) / Math.log(2)));
+    }
+
+    /**
+     * Compare the balanced beach line against the plain binary tree
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void beachLine(int maxSites){
+        System.out.println("== Beach line: balanced vs plain binary tree");
+        for(int n = 1000; n <= maxSites; n *= 4){
+            Random random = new Random(12345);
+            Set<Vector> uniform = uniform(n, random);
+            Set<Vector> diagonal = diagonal(n, random);
+
+            time("uniform  / balanced", uniform, s -> new Voronoi(s, BOX, true, EventQueue.Type.INDEXED_HEAP));
+            time("uniform  / plain", uniform, s -> new Voronoi(s, BOX, false, EventQueue.Type.INDEXED_HEAP));
+            time("diagonal / balanced", diagonal, s -> new Voronoi(s, BOX, true, EventQueue.Type.INDEXED_HEAP));
+            time("diagonal / plain", diagonal, s -> new Voronoi(s, BOX, false, EventQueue.Type.INDEXED_HEAP));
+        }
+    }
+
+    /**
+     * Compare the event queue implementations
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void queue(int maxSites){
+        System.out.println("== Event queue: PriorityQueue vs indexed heap vs sorted sites");
+        for(int n = 1000; n <= maxSites; n *= 4){
+            Set<Vector> uniform = uniform(n, new Random(12345));
+            for(EventQueue.Type type : EventQueue.Type.values())
+                time("uniform  / " + type, uniform, s -> new Voronoi(s, BOX, type));
+        }
+    }
+
+
+    /**
+     * Insertion heavy sweeps, measuring mostly the search of the arc above each new site
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void insert(int maxSites){
+        System.out.println("== Site insertion: balanced vs plain binary tree");
+        for(int n = 1000; n <= maxSites; n *= 4){
+            Set<Vector> strip = strip(n, new Random(12345));
+            time("strip    / balanced", strip, s -> new Voronoi(s, BOX, true, EventQueue.Type.SORTED_SITES));
+            time("strip    / plain", strip, s -> new Voronoi(s, BOX, false, EventQueue.Type.SORTED_SITES));
+        }
+    }
+
+    /**
+     * Compare a new diagram for each computation against a single diagram reset for each computation,
+     * both in time and in bytes allocated by the computation
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void reuse(int maxSites){
+        System.out.println("== Diagram: new instance vs reset");
+        for(int n = 1000; n <= maxSites; n *= 4){
+            Set<Vector> uniform = uniform(n, new Random(12345));
+            Voronoi diagram = new Voronoi.Builder(BOX).build(uniform);
+
+            time("uniform  / new", uniform, s -> new Voronoi(s, BOX));
+            allocated("uniform  / new", uniform, s -> new Voronoi(s, BOX));
+            time("uniform  / reset", uniform, diagram::reset);
+            allocated("uniform  / reset", uniform, diagram::reset);
+        }
+    }
+
+    /**
+     * Measure and print the bytes allocated by the current thread during one run of the scenario
+     * Note: requires the HotSpot extension of the thread management bean
+     * @param name (String): the scenario name
+     * @param sites (Set of Vector): the input sites
+     * @param scenario (Scenario): the scenario to measure
+     */
+    private static void allocated(String name, Set<Vector> sites, Scenario scenario){
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean)){
+            System.out.println("Allocation measure not supported by this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id = Thread.currentThread().getId();
+        scenario.run(sites);
+        long before = threads.getThreadAllocatedBytes(id);
+        scenario.run(sites);
+        long bytes = threads.getThreadAllocatedBytes(id) - before;
+        int n = sites.size();
+        System.out.printf("%-28s n=%-9d %10.2f MB %8.2f bytes/site%n", name, n, bytes / 1e6, (double) bytes / n);
+    }
+
+
+    /**
+     * Compare the sequential Fortune engine against the parallel divide and conquer engine
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void parallel(int maxSites){
+        System.out.println("== Engines: fortune vs parallel (" + ForkJoinPool.commonPool().getParallelism() + " workers)");
+        VoronoiEngine fortune = new Voronoi.Builder(BOX);
+        VoronoiEngine parallel = new ParallelVoronoi.Builder(BOX);
+        for(int n = 1000; n <= maxSites; n *= 4){
+            Set<Vector> uniform = uniform(n, new Random(12345));
+            time("uniform  / fortune", uniform, fortune::build);
+            time("uniform  / parallel", uniform, parallel::build);
+        }
+    }
+
+    /**
+     * Compare the Fortune sweep against the incremental Delaunay engine
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void delaunay(int maxSites){
+        System.out.println("== Engines: fortune vs delaunay");
+        VoronoiEngine fortune = new Voronoi.Builder(BOX);
+        VoronoiEngine delaunay = new DelaunayVoronoi.Builder(BOX);
+        for(int n = 1000; n <= maxSites; n *= 10){
+            Set<Vector> uniform = uniform(n, new Random(12345));
+            time("uniform  / fortune", uniform, fortune::build);
+            time("uniform  / delaunay", uniform, delaunay::build);
+        }
+    }
+
+    /**
+     * Compare the local edition of a Delaunay diagram (site moves) against a full rebuild
+     * @param maxSites (int): the largest number of sites
+     */
+    private static void edit(int maxSites){
+        System.out.println("== Site moves: local edition vs rebuild");
+        int moves = 1000;
+        for(int n = 1000; n <= maxSites; n *= 10){
+            Random random = new Random(12345);
+            Set<Vector> uniform = uniform(n, random);
+            time("uniform  / rebuild", uniform, s -> new DelaunayVoronoi(s, BOX));
+
+            DelaunayVoronoi diagram = new DelaunayVoronoi(uniform, BOX);
+            java.util.Random pick = new java.util.Random(12345);
+            long start = System.nanoTime();
+            for(int i = 0; i < moves; i++){
+                List<VoronoiCell> cells = diagram.getCells();
+                diagram.moveSite(cells.get(pick.nextInt(cells.size())), BOX.sample(random));
+            }
+            System.out.printf("%-28s n=%-9d %10.4f ms per move%n", "uniform  / moveSite", n, (System.nanoTime() - start) / 1e6 / moves);
+        }
+    }
+
+    /**
+     * Main entry point
+     * @param args (String[]): [0]-optional scenario name (all by default), [1]-optional maximum number of sites
+     */
+    public static void main(String[] args){
+        String scenario = args.length > 0 ? args[0] : "all";
+        int maxSites = args.length > 1 ? Integer.parseInt(args[1]) : 64000;
+
+        if(scenario.equals("all") || scenario.equals("beachline"))
+            beachLine(maxSites);
+        if(scenario.equals("all") || scenario.equals("queue"))
+            queue(maxSites);
+        if(scenario.equals("all") || scenario.equals("insert"))
+            insert(maxSites);
+        if(scenario.equals("all") || scenario.equals("reuse"))
+            reuse(maxSites);
+        if(scenario.equals("all") || scenario.equals("parallel"))
+            parallel(maxSites);
+        if(scenario.equals("all") || scenario.equals("delaunay"))
+            delaunay(maxSites);
+        if(scenario.equals("all") || scenario.equals("edit"))
+            edit(maxSites);
+    }
+}
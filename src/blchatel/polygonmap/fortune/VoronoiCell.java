@@ -3,7 +3,6 @@ package blchatel.polygonmap.fortune;
 import blchatel.polygonmap.geometry2d.*;
 import blchatel.polygonmap.geometry2d.Random;
 import blchatel.polygonmap.geometry2d.Vector;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.awt.geom.Path2D;
 import java.util.*;
@@ -11,26 +10,30 @@ import java.util.*;
 
 /**
  * 2D Voronoi Cell definition and implementation with double precision
- * The cell is a shape defined by its site and its vertices (computed from iteratively added edges)
+ * The cell is a shape defined by its site and its boundary: the cycle of half-edges of the doubly-connected edge list
  * The cell is an implementation of the SITE_EVENT
  * Note: the voronoi cell provide no guaranty it is complete when using its representation
  * @see Event
  * @see Shape
  * @see Vector
- * @see Edge
+ * @see Dcel
  * @see Random
  */
 public class VoronoiCell extends Shape implements Event{
 
     /// Voronoi Utilities
-    private final Vector site;
-    private final Set<Edge> edges;
+    private Vector site;
+    /// One half-edge of the cell boundary (the face of the half-edge is this cell)
+    Dcel.HalfEdge edge;
+    /// Index of the cell into its diagram
+    int id;
 
     /// Shape utilities
     private boolean init;
-    private List<Vector> points;
+    private final PointArray points;
     private double area;
     private double perimeter;
+    private double energy;
     private Vector center;
 
 
@@ -39,100 +42,119 @@ public class VoronoiCell extends Shape implements Event{
      * @param site (Vector): the cell site
      */
     VoronoiCell(Vector site){
-        this.site = site;
-        edges = new HashSet<>();
-        points = new ArrayList<>();
-        init = false;
+        points = new PointArray(8);
+        reset(site);
     }
 
     /**
-     * Add an edge to this cell which is under construction
-     * @param e (Edge): the edge to add
+     * Reuse this cell for another site: the cell is emptied
+     * @param site (Vector): the new cell site
      */
-    void addEdge(Edge e){
-        edges.add(e);
-    }
-
-    /**
-     * Add a vertices to the cell
-     * Used to add corner of the box that are not included while generating the voronoi diagram
-     * @param v (Vector): the corner to add
-     */
-    void addCorner(Vector v){
-        points.add(v);
+    void reset(Vector site){
+        this.site = site;
+        edge = null;
+        points.clear();
+        init = false;
+        center = null;
     }
 
 
-    /** Init the voronoi cell representation. Assume all the edge are already added*/
+    /** Init the voronoi cell representation. Assume the diagram is complete (i.e. bounded)*/
     private void initialize() {
 
-        points = connectCell();
+        // Vertices of the cell, already in counter-clock-wise order along the half-edges of its boundary
+        points.clear();
+        vertices(points);
 
-        // The cell can be decomposed into point.size() triangle
-        area = 0;
-        perimeter = 0;
-
-        Vector center = Vector.ZERO;
-        Vector centerSimple = Vector.ZERO;
+        double[] centroid = new double[2];
+        area = 2 * points.centroid(0, points.size(), centroid);
+        center = new Vector(centroid[0], centroid[1]);
 
+        // The cell can be decomposed into point.size() triangles around the site
+        perimeter = 0;
+        energy = 0;
+        double[] xs = points.xs(), ys = points.ys();
         for(int i = 0; i < points.size(); i++){
+            int j = i == points.size()-1 ? 0 : i+1;
 
-            // create the triangle
-            Vector v2 = points.get(i);
-            Vector v3 = i == points.size()-1 ? points.get(0) : points.get(i+1);
+            // Second moment of the triangle about the site: (a/2) * (p.p + p.q + q.q) / 6
+            double px = xs[i] - site.x, py = ys[i] - site.y, qx = xs[j] - site.x, qy = ys[j] - site.y;
+            double a = px * qy - py * qx;
+            energy += a * (px*px + py*py + px*qx + py*qy + qx*qx + qy*qy) / 12;
 
-            Vector c = site.add(v2).add(v3).scale(1.0/3.0);
-
-            double a = area(site, v2, v3);
-            area += a;
+            perimeter += Math.sqrt((qx - px) * (qx - px) + (qy - py) * (qy - py));
+        }
+        init = true;
+    }
 
-            center = center.add(c.scale(a));
-            centerSimple = centerSimple.add(v2);
+    /**
+     * Append the vertices of the cell by walking the half-edges of the cell boundary (counter-clock-wise)
+     * @param out (PointArray): output array
+     */
+    public void vertices(PointArray out){
+        Dcel.HalfEdge h = edge;
+        do {
+            out.add(h.origin.x, h.origin.y);
+            h = h.next;
+        } while(h != null && h != edge && h.face == this);
+    }
 
-            perimeter += v2.subtract(v3).getLength();
+    /**
+     * Build a single path of several cells
+     * @param cells (Collection of VoronoiCell): the cells
+     * @param buffer (PointArray): working array of the cell vertices, cleared
+     * @return (Path2D): the path, with one closed polygon for each cell
+     */
+    static Path2D toPath(Collection<VoronoiCell> cells, PointArray buffer){
+        buffer.clear();
+        Path2D path = new Path2D.Double();
+        for(VoronoiCell cell : cells){
+            int from = buffer.size();
+            cell.vertices(buffer);
+            buffer.appendPolygon(path, from, buffer.size());
         }
-
-        this.center = Math.abs(area) < Vector.EPSILON ? centerSimple.scale(1.0/points.size()) : center.scale(1.0/area);
-        init = true;
+        return path;
     }
 
     /**
-     * Create cell vertices from added edges. Use angle from site-edgeEnd vectors to sort the vertices
-     * in a counter-clock-wise order
-     * @return (List of Vector): the ordered list of vertices for this cell
+     * Find the neighbor cells by walking the half-edges of the cell boundary
+     * @return (List of VoronoiCell): the cells sharing an edge with this one, in counter-clock-wise order
      */
-    private List<Vector> connectCell(){
+    public List<VoronoiCell> neighbors(){
 
-        Set<Vector> vertices = new HashSet<>(points);
+        List<VoronoiCell> neighbors = new ArrayList<>();
+        Dcel.HalfEdge h = edge;
+        do {
+            if(h.twin != null)
+                neighbors.add(h.twin.face);
+            h = h.next;
+        } while(h != null && h != edge && h.face == this);
 
-        for(Edge edge : edges){
-            vertices.add(edge.v1);
-            vertices.add(edge.v2);
-        }
+        return neighbors;
+    }
 
-        List<Vector> orderedVertices = new ArrayList<>(vertices);
-        orderedVertices.sort((v1, v2) -> {
-            Vector r1 = v1.subtract(site);
-            Vector r2 = v2.subtract(site);
-            return Double.compare(r1.getAngle(), r2.getAngle());
-        });
+    /** @return (int): the index of the cell into the cells of its diagram */
+    public int getId() {
+        return id;
+    }
 
-        return orderedVertices;
+    /** @return (Dcel.HalfEdge): one half-edge of the cell boundary, the others are reached with next pointers */
+    public Dcel.HalfEdge getEdge() {
+        return edge;
     }
 
     /**
      * Compute the double signed area formed by the triangle a, b, c
-     * @param a (Vector): first vertex of the triangle
-     * @param b (Vector): second vertex of the triangle
-     * @param c (Vector): third vertex of the triangle
+     * @param ax (double): x-coordinate of the first vertex of the triangle
+     * @param ay (double): y-coordinate of the first vertex of the triangle
+     * @param bx (double): x-coordinate of the second vertex of the triangle
+     * @param by (double): y-coordinate of the second vertex of the triangle
+     * @param cx (double): x-coordinate of the third vertex of the triangle
+     * @param cy (double): y-coordinate of the third vertex of the triangle
      * @return (double): the signed area (positive if a, b, c are counter-clock-wise, negative otherwise)
      */
-    private static double area(Vector a, Vector b, Vector c) {
-        double abx = b.x - a.x;
-        double aby = b.y - a.y;
-        double acx = c.x - a.x;
-        double acy = c.y - a.y;
-        return abx * acy - aby * acx;
+    private static double area(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
     }
 
     /**
@@ -146,6 +168,31 @@ public class VoronoiCell extends Shape implements Event{
         return center;
     }
 
+    /**
+     * Compute the center of mass of the cell for a density field, the weighted centroid of Lloyd's algorithm.
+     * The mass and moments are integrated exactly along the cell boundary (DensityField.centroid): the cost is
+     * the number of pixels crossed by the boundary, not the number of pixels covered by the cell
+     * @param density (DensityField): the density field
+     * @return (Vector): the weighted center of the cell, its unweighted center if its mass is zero
+     */
+    public Vector center(DensityField density){
+        if(!init)
+            initialize();
+
+        double[] out = new double[2];
+        return density.centroid(points, out) != 0 ? new Vector(out[0], out[1]) : center;
+    }
+
+    /**
+     * Compute the centroidal Voronoi tessellation energy of the cell
+     * @return (double): the integral over the cell of the squared distance to its site
+     */
+    public double energy(){
+        if(!init)
+            initialize();
+        return energy;
+    }
+
 
     /// VoronoiCell implements Event
 
@@ -154,6 +201,16 @@ public class VoronoiCell extends Shape implements Event{
         return site;
     }
 
+    @Override
+    public double getX() {
+        return site.x;
+    }
+
+    @Override
+    public double getY() {
+        return site.y;
+    }
+
 
     /// VoronoiCell extends Shape
 
@@ -164,7 +221,17 @@ public class VoronoiCell extends Shape implements Event{
 
     @Override
     public boolean contains(Vector v) {
-        throw new NotImplementedException();
+        if(!init)
+            initialize();
+
+        // The cell is convex and counter-clock-wise: v must lie on the left of each edge
+        double[] xs = points.xs(), ys = points.ys();
+        for(int i = 0; i < points.size(); i++){
+            int j = i == points.size()-1 ? 0 : i+1;
+            if(area(xs[i], ys[i], xs[j], ys[j], v.x, v.y) < 0)
+                return false;
+        }
+        return true;
     }
 
     @Override
@@ -183,7 +250,59 @@ public class VoronoiCell extends Shape implements Event{
 
     @Override
     public Vector sample(Random random) {
-        throw new NotImplementedException();
+        if(!init)
+            initialize();
+
+        // A triangle of the fan around the site, with a probability proportional to its area, then a point in it
+        double r = random.nextDouble() * area;
+        double[] xs = points.xs(), ys = points.ys();
+        for(int i = 0; i < points.size(); i++){
+            int j = i == points.size()-1 ? 0 : i+1;
+            double a = area(site.x, site.y, xs[i], ys[i], xs[j], ys[j]);
+            if(r < a || j == 0){
+                double u = random.nextDouble(), v = random.nextDouble();
+                if(u + v > 1){
+                    u = 1 - u;
+                    v = 1 - v;
+                }
+                return new Vector(site.x + u * (xs[i] - site.x) + v * (xs[j] - site.x),
+                        site.y + u * (ys[i] - site.y) + v * (ys[j] - site.y));
+            }
+            r -= a;
+        }
+        return site;
+    }
+
+    @Override
+    public void sample(Random random, double[] xs, double[] ys, int from, int to) {
+        if(!init)
+            initialize();
+
+        // Cumulated areas of the fan triangles, computed once for all the samples
+        int count = points.size();
+        double[] px = points.xs(), py = points.ys();
+        double[] cumulated = new double[count];
+        double sum = 0;
+        for(int i = 0; i < count; i++){
+            int j = i == count-1 ? 0 : i+1;
+            sum += area(site.x, site.y, px[i], py[i], px[j], py[j]);
+            cumulated[i] = sum;
+        }
+
+        for(int s = from; s < to; s++){
+            double r = random.nextDouble() * sum;
+            int i = 0;
+            while(i < count-1 && r >= cumulated[i])
+                i++;
+            int j = i == count-1 ? 0 : i+1;
+            double u = random.nextDouble(), v = random.nextDouble();
+            if(u + v > 1){
+                u = 1 - u;
+                v = 1 - v;
+            }
+            xs[s] = site.x + u * (px[i] - site.x) + v * (px[j] - site.x);
+            ys[s] = site.y + u * (py[i] - site.y) + v * (py[j] - site.y);
+        }
     }
 
     @Override
@@ -192,13 +311,7 @@ public class VoronoiCell extends Shape implements Event{
             initialize();
 
         Path2D path = new Path2D.Double();
-        Vector point = points.get(0);
-        path.moveTo(point.x, point.y);
-        for (int i = 1; i < points.size(); ++i) {
-            point = points.get(i);
-            path.lineTo(point.x, point.y);
-        }
-        path.closePath();
+        points.appendPolygon(path, 0, points.size());
         return path;
     }
 }
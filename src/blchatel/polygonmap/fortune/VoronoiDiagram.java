@@ -0,0 +1,34 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Vector;
+import blchatel.polygonmap.swing.Drawable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * A Voronoi diagram bounded by a box, whatever the engine which built it
+ * @see VoronoiEngine
+ * @see Voronoi
+ * @see ParallelVoronoi
+ */
+public interface VoronoiDiagram extends Drawable {
+
+    /**
+     * Recompute the diagram in place for new site points, recycling its structures
+     * Note: the cells of the previous diagram must not be used anymore
+     * @param sites (Collection of Vector): the distinct site points
+     */
+    void reset(Collection<Vector> sites);
+
+    /** @return (List of VoronoiCell): the cells of the diagram (unmodifiable), in the order of the given sites */
+    List<VoronoiCell> getCells();
+
+    /**
+     * Getter for the cell centroids
+     * @return (Set of Vector): the centroids (one for each cell)
+     */
+    Set<Vector> cellCentroids();
+}
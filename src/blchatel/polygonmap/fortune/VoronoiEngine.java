@@ -0,0 +1,22 @@
+package blchatel.polygonmap.fortune;
+
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.Collection;
+
+
+/**
+ * An algorithm building Voronoi diagrams, which yields the same cells whatever the implementation
+ * - Voronoi.Builder: the sequential Fortune sweep
+ * - ParallelVoronoi.Builder: strips built concurrently and merged, for large site sets on multi-core machines
+ * @see VoronoiDiagram
+ */
+public interface VoronoiEngine {
+
+    /**
+     * Create and generate a Voronoi Diagram for given site points
+     * @param sites (Collection of Vector): the distinct site points
+     * @return (VoronoiDiagram): the new diagram, which can be reset for the next sites
+     */
+    VoronoiDiagram build(Collection<Vector> sites);
+}
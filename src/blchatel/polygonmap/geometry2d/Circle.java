@@ -90,7 +90,17 @@ public final class Circle extends Shape{
     public Vector sample(Random random) {
         double e1 = random.nextDouble();
         double e2 = random.nextDouble();
-        return getPoint(Math.sqrt(e1), 2*Math.PI*e2);
+        return getPoint(r*Math.sqrt(e1), 2*Math.PI*e2);
+    }
+
+    @Override
+    public void sample(Random random, double[] xs, double[] ys, int from, int to) {
+        for(int i = from; i < to; i++){
+            double rho = r * Math.sqrt(random.nextDouble());
+            double phi = 2*Math.PI*random.nextDouble();
+            xs[i] = c.x + rho*Math.cos(phi);
+            ys[i] = c.y + rho*Math.sin(phi);
+        }
     }
 
     @Override
@@ -0,0 +1,263 @@
+package blchatel.polygonmap.geometry2d;
+
+import java.util.function.DoubleBinaryOperator;
+
+
+/**
+ * 2D density field defined by a raster over a rectangle, with double precision
+ * The density is constant over each pixel and its integral over any axis aligned box is given in O(1)
+ * by a summed-area table: the table is exactly bilinear inside each pixel, hence the box corners need not
+ * lie on the pixel corners
+ * The mass and center of mass over a polygon are exact too: by Green's theorem they are integrals along its
+ * boundary of the row prefix sums of the density and of x times the density, which are piecewise polynomial
+ * inside each pixel. The cost is the number of pixels crossed by the boundary, not the number of pixels covered
+ * Rows are stored from the bottom (smallest y) of the rectangle, each row from its left (smallest x)
+ * @see Rectangle
+ */
+public final class DensityField {
+
+    /// The covered rectangle
+    private final Rectangle box;
+    /// Raster dimensions and pixel dimensions
+    private final int width, height;
+    private final double pw, ph;
+    /// Summed-area table: sat[j*(width+1)+i] is the sum of the pixels of columns < i and rows < j
+    private final double[] sat;
+    /// Density of each pixel, and row prefix sums: rowSums[j*(width+1)+i] and rowMoments[j*(width+1)+i] are the
+    /// integrals over x of the density and of x times the density over the columns < i of the row j
+    private final double[] pixels;
+    private final double[] rowSums, rowMoments;
+
+    /**
+     * Default DensityField constructor
+     * @param box (Rectangle): the rectangle covered by the raster
+     * @param width (int): the number of columns of the raster
+     * @param height (int): the number of rows of the raster
+     * @param values (double[]): the non-negative density of each pixel, row by row from the bottom
+     */
+    public DensityField(Rectangle box, int width, int height, double[] values){
+        if(width < 1 || height < 1 || values.length < width * height)
+            throw new IllegalArgumentException("The raster must have width*height values");
+        this.box = box;
+        this.width = width;
+        this.height = height;
+        this.pw = box.w / width;
+        this.ph = box.h / height;
+
+        int stride = width + 1;
+        sat = new double[stride * (height + 1)];
+        pixels = new double[width * height];
+        rowSums = new double[stride * height];
+        rowMoments = new double[stride * height];
+        for(int j = 0; j < height; j++){
+            double row = 0;
+            for(int i = 0; i < width; i++){
+                double v = values[j * width + i];
+                if(v < 0)
+                    throw new IllegalArgumentException("The density cannot be negative");
+                row += v;
+                sat[(j+1) * stride + i + 1] = sat[j * stride + i + 1] + row;
+
+                double x0 = box.x + i * pw, x1 = box.x + (i + 1) * pw;
+                pixels[j * width + i] = v;
+                rowSums[j * stride + i + 1] = rowSums[j * stride + i] + v * (x1 - x0);
+                rowMoments[j * stride + i + 1] = rowMoments[j * stride + i] + v * (x1 - x0) * (x1 + x0) / 2;
+            }
+        }
+    }
+
+    /**
+     * DensityField constructor sampling a function at the pixel centers
+     * @param box (Rectangle): the rectangle covered by the raster
+     * @param width (int): the number of columns of the raster
+     * @param height (int): the number of rows of the raster
+     * @param density (DoubleBinaryOperator): the non-negative density at (x, y)
+     */
+    public DensityField(Rectangle box, int width, int height, DoubleBinaryOperator density){
+        this(box, width, height, sample(box, width, height, density));
+    }
+
+    /**
+     * Sample a function at the pixel centers
+     * @param box (Rectangle): the rectangle covered by the raster
+     * @param width (int): the number of columns of the raster
+     * @param height (int): the number of rows of the raster
+     * @param density (DoubleBinaryOperator): the density at (x, y)
+     * @return (double[]): the raster values, row by row from the bottom
+     */
+    private static double[] sample(Rectangle box, int width, int height, DoubleBinaryOperator density){
+        double[] values = new double[width * height];
+        for(int j = 0; j < height; j++)
+            for(int i = 0; i < width; i++)
+                values[j * width + i] = density.applyAsDouble(box.x + (i + 0.5) * box.w / width,
+                        box.y + (j + 0.5) * box.h / height);
+        return values;
+    }
+
+    /**
+     * Evaluate the summed-area table at a point given in pixel coordinates, clamped to the raster
+     * @param u (double): the column coordinate
+     * @param v (double): the row coordinate
+     * @return (double): the sum of the pixels below and to the left of (u, v), in pixel units
+     */
+    private double table(double u, double v){
+        u = Math.max(0, Math.min(width, u));
+        v = Math.max(0, Math.min(height, v));
+        int i = Math.min((int)u, width - 1);
+        int j = Math.min((int)v, height - 1);
+        double fu = u - i, fv = v - j;
+        int stride = width + 1;
+        int k = j * stride + i;
+        double s00 = sat[k], s10 = sat[k+1], s01 = sat[k+stride], s11 = sat[k+stride+1];
+        return s00 + fu * (s10 - s00) + fv * (s01 - s00) + fu * fv * (s11 - s10 - s01 + s00);
+    }
+
+    /**
+     * Compute the integral of the density over an axis aligned box (the density is 0 outside the field)
+     * @param x0 (double): the smallest x of the box
+     * @param y0 (double): the smallest y of the box
+     * @param x1 (double): the largest x of the box
+     * @param y1 (double): the largest y of the box
+     * @return (double): the integral of the density over the box
+     */
+    public double integral(double x0, double y0, double x1, double y1){
+        double u0 = (x0 - box.x) / pw, u1 = (x1 - box.x) / pw;
+        double v0 = (y0 - box.y) / ph, v1 = (y1 - box.y) / ph;
+        return (table(u1, v1) - table(u0, v1) - table(u1, v0) + table(u0, v0)) * pw * ph;
+    }
+
+    /**
+     * Compute the mass and the center of mass of the density over a polygon, exactly
+     * With F(x, y) and G(x, y) the integrals of the density and of x times the density from the left of the field
+     * to x along the row of y, the mass is the boundary integral of F dy and the moments are the ones of G dy and
+     * y F dy (Green's theorem). Along a piece of an edge inside a single pixel, F is linear and G quadratic in y
+     * @param polygon (PointArray): the vertices of the polygon, in either orientation
+     * @param out (double[]): output x and y coordinates of the center of mass, unchanged if the mass is zero
+     * @return (double): the mass, negative if the polygon is clockwise, zero if it is only rounding errors
+     */
+    public double centroid(PointArray polygon, double[] out){
+        double[] xs = polygon.xs(), ys = polygon.ys();
+        int n = polygon.size();
+        double[] moments = new double[4];
+        for(int k = 0; k < n; k++){
+            int l = k == n-1 ? 0 : k+1;
+            edge(xs[k], ys[k], xs[l], ys[l], moments);
+        }
+        // The mass is a difference of the prefix sums along the boundary, whose magnitude bounds its rounding
+        if(Math.abs(moments[0]) <= 1e-12 * moments[3])
+            return 0;
+        out[0] = moments[1] / moments[0];
+        out[1] = moments[2] / moments[0];
+        return moments[0];
+    }
+
+    /**
+     * Add the boundary integrals along an edge, split by the rows of the raster
+     * @param x0 (double): x-coordinate of the edge origin
+     * @param y0 (double): y-coordinate of the edge origin
+     * @param x1 (double): x-coordinate of the edge destination
+     * @param y1 (double): y-coordinate of the edge destination
+     * @param moments (double[]): the mass, the x and y moments and the magnitude of the mass terms, incremented
+     */
+    private void edge(double x0, double y0, double x1, double y1, double[] moments){
+        // A horizontal edge or a part out of the rows (where the density is 0) adds nothing
+        if(y0 == y1)
+            return;
+        double v0 = (y0 - box.y) / ph, v1 = (y1 - box.y) / ph;
+        double lo = Math.max(0, Math.min(v0, v1)), hi = Math.min(height, Math.max(v0, v1));
+        for(int j = (int)lo; j < hi; j++){
+            double ta = (Math.max(lo, j) - v0) / (v1 - v0), tb = (Math.min(hi, j + 1) - v0) / (v1 - v0);
+            if(ta > tb){
+                double t = ta; ta = tb; tb = t;
+            }
+            if(ta < tb)
+                row(j, x0 + ta * (x1 - x0), y0 + ta * (y1 - y0), x0 + tb * (x1 - x0), y0 + tb * (y1 - y0), moments);
+        }
+    }
+
+    /**
+     * Add the boundary integrals along a piece of edge lying in a row, split by the columns of the raster
+     * @param j (int): the row
+     * @param x0 (double): x-coordinate of the piece origin
+     * @param y0 (double): y-coordinate of the piece origin
+     * @param x1 (double): x-coordinate of the piece destination
+     * @param y1 (double): y-coordinate of the piece destination
+     * @param moments (double[]): the mass, the x and y moments and the magnitude of the mass terms, incremented
+     */
+    private void row(int j, double x0, double y0, double x1, double y1, double[] moments){
+        double u0 = (x0 - box.x) / pw, u1 = (x1 - box.x) / pw;
+        double ta = 0;
+        // Column boundaries crossed by the piece, in its direction
+        int first = (int)Math.max(0, Math.ceil(Math.min(u0, u1))), last = (int)Math.min(width, Math.floor(Math.max(u0, u1)));
+        int count = u0 == u1 ? 0 : Math.max(0, last - first + 1);
+        for(int k = 0; k <= count; k++){
+            double tb = 1;
+            if(k < count)
+                tb = ((u1 > u0 ? first + k : last - k) - u0) / (u1 - u0);
+            if(tb > ta)
+                pixel(j, x0 + ta * (x1 - x0), y0 + ta * (y1 - y0), x0 + tb * (x1 - x0), y0 + tb * (y1 - y0), moments);
+            ta = Math.max(ta, tb);
+        }
+    }
+
+    /**
+     * Add the boundary integrals along a piece of edge lying in a pixel of a row, or left or right of the raster
+     * @param j (int): the row
+     * @param x0 (double): x-coordinate of the piece origin
+     * @param y0 (double): y-coordinate of the piece origin
+     * @param x1 (double): x-coordinate of the piece destination
+     * @param y1 (double): y-coordinate of the piece destination
+     * @param moments (double[]): the mass, the x and y moments and the magnitude of the mass terms, incremented
+     */
+    private void pixel(int j, double x0, double y0, double x1, double y1, double[] moments){
+        double u = ((x0 + x1) / 2 - box.x) / pw;
+        if(u < 0)
+            return;
+        int i = (int)Math.min(width, Math.floor(u));
+        int k = j * (width + 1) + i;
+        // F(x) = rowSums + f (x - xi) and G(x) = rowMoments + f (x^2 - xi^2) / 2, with d = x - xi
+        double f = i < width ? pixels[j * width + i] : 0;
+        double xi = box.x + i * pw, d0 = x0 - xi, d1 = x1 - xi;
+        double f0 = rowSums[k] + f * d0, f1 = rowSums[k] + f * d1;
+        double dy = y1 - y0;
+        moments[0] += dy * (f0 + f1) / 2;
+        moments[1] += dy * (rowMoments[k] + f * ((d0*d0 + d0*d1 + d1*d1) / 3 + xi * (d0 + d1)) / 2);
+        moments[2] += dy * ((y0 * f0 + y1 * f1) / 3 + (y0 * f1 + y1 * f0) / 6);
+        moments[3] += Math.abs(dy) * (f0 + f1) / 2;
+    }
+
+    /**
+     * Compute the mean density over the square of given half side centered at (x, y), clamped to the field
+     * @param x (double): x-coordinate of the square center
+     * @param y (double): y-coordinate of the square center
+     * @param half (double): half of the square side
+     * @return (double): the mean density, the density of the nearest pixel if the clamped square is empty
+     */
+    public double mean(double x, double y, double half){
+        double x0 = Math.max(box.x, x - half), x1 = Math.min(box.x + box.w, x + half);
+        double y0 = Math.max(box.y, y - half), y1 = Math.min(box.y + box.h, y + half);
+        double a = (x1 - x0) * (y1 - y0);
+        if(x1 - x0 <= Vector.EPSILON * pw || y1 - y0 <= Vector.EPSILON * ph)
+            return value(x, y);
+        return integral(x0, y0, x1, y1) / a;
+    }
+
+    /**
+     * Density at a point
+     * @param x (double): x-coordinate of the point
+     * @param y (double): y-coordinate of the point
+     * @return (double): the density of the pixel containing the point, or of the nearest one
+     */
+    public double value(double x, double y){
+        int i = Math.max(0, Math.min(width - 1, (int)Math.floor((x - box.x) / pw)));
+        int j = Math.max(0, Math.min(height - 1, (int)Math.floor((y - box.y) / ph)));
+        int stride = width + 1;
+        int k = j * stride + i;
+        return sat[k + stride + 1] - sat[k + 1] - sat[k + stride] + sat[k];
+    }
+
+    /** @return (Rectangle): the rectangle covered by the field */
+    public Rectangle getBox() {
+        return box;
+    }
+}
@@ -5,11 +5,13 @@ import java.awt.geom.Path2D;
 /**
  * 2D Edge definition and implementation with double precision
  * An edge is a shape defined by its two end vectors
+ * The edge is its own intersection handler, hence no handler is allocated per edge
  * @see Shape
  * @see Vector
  * @see Random
+ * @see ShapeIntersection
  */
-public final class Edge extends Shape {
+public final class Edge extends Shape implements ShapeIntersection {
 
     public final Vector v1, v2;
     public final double length;
@@ -20,6 +22,7 @@ public final class Edge extends Shape {
      * @param v2 (Vector): edge's second end
      */
     public Edge(Vector v1, Vector v2) {
+        setIntersection(this);
         this.v1 = v1;
         this.v2 = v2;
         this.length = v2.subtract(v1).getLength();
@@ -60,6 +63,16 @@ public final class Edge extends Shape {
         return v1.mixed(v2, random.nextDouble());
     }
 
+    @Override
+    public void sample(Random random, double[] xs, double[] ys, int from, int to) {
+        double dx = v2.x - v1.x, dy = v2.y - v1.y;
+        for(int i = from; i < to; i++){
+            double t = random.nextDouble();
+            xs[i] = v1.x + t*dx;
+            ys[i] = v1.y + t*dy;
+        }
+    }
+
     @Override
     public boolean contains(Vector v) {
         Vector director = new Vector(v2.x-v1.x, v2.y-v1.y).normalized();
@@ -85,4 +98,18 @@ public final class Edge extends Shape {
     protected Vector[] acceptIntersectWith(ShapeIntersection intersection) {
         return intersection.intersectWith(this);
     }
+
+
+    /// Edge implements ShapeIntersection
+
+    @Override
+    public Vector[] intersectWith(Rectangle rectangle) {
+        double[] out = new double[4];
+        int n = Intersections.segmentBox(v1.x, v1.y, v2.x, v2.y,
+                rectangle.x, rectangle.y, rectangle.x + rectangle.w, rectangle.y + rectangle.h, out);
+        Vector[] intersections = new Vector[n];
+        for(int i = 0; i < n; i++)
+            intersections[i] = new Vector(out[2*i], out[2*i+1]);
+        return intersections;
+    }
 }
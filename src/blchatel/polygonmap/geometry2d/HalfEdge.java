@@ -5,13 +5,11 @@ import java.awt.geom.Path2D;
 /**
  * 2D Half-Edge definition and implementation with double precision
  * An half-edge is a shape defined by its head and a direction.
- * The half-edge also have a support function which is Affine or Vertical
+ * The half-edge is supported by a Ray (no slope form, hence no special case for the vertical half-edges)
  * The half-edge define its intersection handler
  * @see Shape
  * @see Vector
- * @see Function
- * @see Affine
- * @see Vertical
+ * @see Ray
  * @see Random
  * @see ShapeIntersection
  */
@@ -19,7 +17,7 @@ public class HalfEdge extends Shape {
 
 	public final Vector head;
     public final Vector director;
-    public final Function support;
+    public final Ray ray;
 
     /**
      * Half-Edge constructor
@@ -31,21 +29,10 @@ public class HalfEdge extends Shape {
 		this.head = head;
 		this.director = director;
 
-		// Let us compute the support line
-		// The vector left->right is perpendicular to it so we can easily deduct the slope
-        //double slope = (right.x - left.x)/(left.y - right.y);
         if(Math.abs(director.x) < Vector.EPSILON && Math.abs(director.y) < Vector.EPSILON){
             throw new IllegalArgumentException("Vector d cannot be so small !");
         }
-
-        if(Math.abs(director.x) < Vector.EPSILON){
-            support = new Vertical(head.x);
-        }
-        else{
-            double slope = (director.y)/(director.x);
-            double ordinate = head.y - slope*head.x;
-            support = new Affine(slope, ordinate);
-    	}
+        ray = new Ray(head, director);
 	}
 
     /**
@@ -82,15 +69,7 @@ public class HalfEdge extends Shape {
 
     @Override
     public boolean contains(Vector v) {
-
-	    double lambda1 = (Math.abs(director.x) > Vector.EPSILON) ? (v.x-head.x)/director.x : Double.NaN;
-	    double lambda2 = (Math.abs(director.y) > Vector.EPSILON) ? (v.y-head.y)/director.y : Double.NaN;
-
-	    if(lambda1 == Double.NaN)
-	        return lambda2 >= 0;
-        if(lambda2 == Double.NaN)
-            return lambda1 >= 0;
-        return (lambda1 >= 0 && Math.abs(lambda1-lambda2) < Vector.EPSILON);
+        return ray.contains(v.x, v.y);
     }
 
     @Override
@@ -112,35 +91,20 @@ public class HalfEdge extends Shape {
 
         @Override
         public Vector[] intersectWith(Rectangle rectangle) {
-
-            Vector[] intersections = support.intersectWith(rectangle);
-
-            if(intersections.length == 0 || !rectangle.contains(head))
-                return intersections;
-
-            Vector i = contains(intersections[0]) ? intersections[0] : intersections[1];
-            return new Vector[]{i};
+            double[] out = new double[4];
+            int n = ray.intersect(rectangle, out);
+            Vector[] intersections = new Vector[n];
+            for(int i = 0; i < n; i++)
+                intersections[i] = new Vector(out[2*i], out[2*i+1]);
+            return intersections;
         }
 
         @Override
         public Vector[] intersectWith(HalfEdge halfEdge) {
-
-            Vector[] intersections = support.intersectWith(halfEdge.support);
-
-            if(intersections.length == 0)
-                return intersections;
-
-            Vector i = intersections[0];
-            Vector d1 = i.subtract(head);
-            Vector d2 = i.subtract(halfEdge.head);
-
-            double lambda1 = Math.abs(director.x) > Vector.EPSILON ? d1.x/director.x : d1.y/director.y;
-            double lambda2 = Math.abs(halfEdge.director.x) > Vector.EPSILON ? d2.x/halfEdge.director.x : d2.y/halfEdge.director.y;
-
-            if(lambda1 < 0 || lambda2 < 0){
+            double[] out = new double[4];
+            if(ray.intersect(halfEdge.ray, out) == 0)
                 return new Vector[]{};
-            }
-            return new Vector[]{i};
+            return new Vector[]{new Vector(out[0], out[1])};
         }
     }
 
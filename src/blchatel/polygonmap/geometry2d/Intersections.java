@@ -0,0 +1,236 @@
+package blchatel.polygonmap.geometry2d;
+
+/**
+ * Allocation-free intersection kernels with double precision inputs
+ * Unlike Shape.intersectWith, which dispatches through the ShapeIntersection visitor and returns new vectors,
+ * the kernels take the primitive coordinates of their operands, write their results into caller-owned
+ * output slots and return the number of hits:
+ * - A line is given by a point p and a direction u (the points p + t*u for any t)
+ * - A ray is the part t >= 0 of a line and a segment a, b the part 0 <= t <= 1 of the line a + t*(b-a)
+ * - A box is given by its min and max corners
+ * The output arrays are never resized: the caller reuses them from one call to the other
+ * @see Shape
+ * @see ShapeIntersection
+ * @see Predicates
+ */
+public final class Intersections {
+
+    /** Intersections is a static utility class, it cannot be instantiated */
+    private Intersections(){}
+
+    /**
+     * Intersection between two lines p + t*u and q + s*v
+     * @param px (double): x-coordinate of the point of the first line
+     * @param py (double): y-coordinate of the point of the first line
+     * @param ux (double): x-coordinate of the direction of the first line
+     * @param uy (double): y-coordinate of the direction of the first line
+     * @param qx (double): x-coordinate of the point of the second line
+     * @param qy (double): y-coordinate of the point of the second line
+     * @param vx (double): x-coordinate of the direction of the second line
+     * @param vy (double): y-coordinate of the direction of the second line
+     * @param out (double[]): output x, y of the intersection then its parameters t and s (at least 4 slots)
+     * @return (int): 1 if the lines intersect, 0 if they are parallel (or a direction is null)
+     */
+    public static int lineLine(double px, double py, double ux, double uy,
+                               double qx, double qy, double vx, double vy, double[] out){
+
+        // Sine of the angle between the lines, relative to the direction lengths
+        double det = ux * vy - uy * vx;
+        if(Math.abs(det) <= Vector.EPSILON * Math.sqrt((ux*ux + uy*uy) * (vx*vx + vy*vy)))
+            return 0;
+
+        double wx = qx - px, wy = qy - py;
+        double t = (wx * vy - wy * vx) / det;
+        double s = (wx * uy - wy * ux) / det;
+        out[0] = px + t * ux;
+        out[1] = py + t * uy;
+        out[2] = t;
+        out[3] = s;
+        return 1;
+    }
+
+    /**
+     * Intersection between two rays p + t*u (t >= 0) and q + s*v (s >= 0)
+     * @param px (double): x-coordinate of the head of the first ray
+     * @param py (double): y-coordinate of the head of the first ray
+     * @param ux (double): x-coordinate of the direction of the first ray
+     * @param uy (double): y-coordinate of the direction of the first ray
+     * @param qx (double): x-coordinate of the head of the second ray
+     * @param qy (double): y-coordinate of the head of the second ray
+     * @param vx (double): x-coordinate of the direction of the second ray
+     * @param vy (double): y-coordinate of the direction of the second ray
+     * @param out (double[]): output x, y of the intersection then its parameters t and s (at least 4 slots)
+     * @return (int): 1 if the rays intersect, 0 otherwise (the slots may have been written anyway)
+     */
+    public static int rayRay(double px, double py, double ux, double uy,
+                             double qx, double qy, double vx, double vy, double[] out){
+        if(lineLine(px, py, ux, uy, qx, qy, vx, vy, out) == 0 || out[2] < 0 || out[3] < 0)
+            return 0;
+        return 1;
+    }
+
+    /**
+     * Clip the part t0 <= t <= t1 of the line p + t*u by a box with the Liang-Barsky algorithm
+     * The infinite bounds are allowed, e.g. t0 = 0 and t1 = +infinity for a ray
+     * @param px (double): x-coordinate of the point of the line
+     * @param py (double): y-coordinate of the point of the line
+     * @param ux (double): x-coordinate of the direction of the line
+     * @param uy (double): y-coordinate of the direction of the line
+     * @param t0 (double): the lower parameter bound
+     * @param t1 (double): the upper parameter bound
+     * @param xMin (double): left side of the box
+     * @param yMin (double): bottom side of the box
+     * @param xMax (double): right side of the box
+     * @param yMax (double): top side of the box
+     * @param out (double[]): output clipped bounds t0 and t1, then the sides of the box they lie on
+     *                      (0 left, 1 right, 2 bottom, 3 top or -1 for a bound left unchanged), at least 4 slots
+     * @return (boolean): true if a part of the line lies into the box, false otherwise
+     */
+    public static boolean clip(double px, double py, double ux, double uy, double t0, double t1,
+                               double xMin, double yMin, double xMax, double yMax, double[] out){
+
+        int side0 = -1, side1 = -1;
+        for(int i = 0; i < 4; i++){
+            // The line enters the half-plane of the side when p < 0 and leaves it when p > 0
+            double p, q;
+            switch (i){
+                case 0: p = -ux; q = px - xMin; break;
+                case 1: p = ux; q = xMax - px; break;
+                case 2: p = -uy; q = py - yMin; break;
+                default: p = uy; q = yMax - py; break;
+            }
+            if(p == 0){
+                if(q < 0) return false;
+                continue;
+            }
+            double r = q / p;
+            if(p < 0 && r > t0){ t0 = r; side0 = i; }
+            if(p > 0 && r < t1){ t1 = r; side1 = i; }
+        }
+        if(t0 >= t1)
+            return false;
+
+        out[0] = t0;
+        out[1] = t1;
+        out[2] = side0;
+        out[3] = side1;
+        return true;
+    }
+
+    /**
+     * Clip the part t0 <= t <= t1 of the line p + t*u by a convex polygon with the Cyrus-Beck algorithm
+     * (the generalization of Liang-Barsky: each side of the polygon bounds a half-plane)
+     * @param px (double): x-coordinate of the point of the line
+     * @param py (double): y-coordinate of the point of the line
+     * @param ux (double): x-coordinate of the direction of the line
+     * @param uy (double): y-coordinate of the direction of the line
+     * @param t0 (double): the lower parameter bound
+     * @param t1 (double): the upper parameter bound
+     * @param polygon (PointArray): the vertices of the convex polygon, in counter-clockwise order
+     * @param out (double[]): output clipped bounds t0 and t1, then the sides of the polygon they lie on
+     *                      (side i going from vertex i to vertex i+1, or -1 for a bound left unchanged), at least 4 slots
+     * @return (boolean): true if a part of the line lies into the polygon, false otherwise
+     */
+    public static boolean clip(double px, double py, double ux, double uy, double t0, double t1,
+                               PointArray polygon, double[] out){
+
+        double[] xs = polygon.xs(), ys = polygon.ys();
+        int n = polygon.size();
+        int side0 = -1, side1 = -1;
+        for(int i = 0; i < n; i++){
+            int j = i == n-1 ? 0 : i+1;
+            double ex = xs[j] - xs[i], ey = ys[j] - ys[i];
+            // The interior is on the left of the side: f(t) = q + t*p >= 0, entering when p > 0 and leaving when p < 0
+            double q = ex * (py - ys[i]) - ey * (px - xs[i]);
+            double p = ex * uy - ey * ux;
+            if(p == 0){
+                if(q < 0) return false;
+                continue;
+            }
+            double r = -q / p;
+            if(p > 0 && r > t0){ t0 = r; side0 = i; }
+            if(p < 0 && r < t1){ t1 = r; side1 = i; }
+        }
+        if(t0 >= t1)
+            return false;
+
+        out[0] = t0;
+        out[1] = t1;
+        out[2] = side0;
+        out[3] = side1;
+        return true;
+    }
+
+    /**
+     * Intersection between a ray p + t*u (t >= 0) and the boundary of a box
+     * @param px (double): x-coordinate of the head of the ray
+     * @param py (double): y-coordinate of the head of the ray
+     * @param ux (double): x-coordinate of the direction of the ray
+     * @param uy (double): y-coordinate of the direction of the ray
+     * @param xMin (double): left side of the box
+     * @param yMin (double): bottom side of the box
+     * @param xMax (double): right side of the box
+     * @param yMax (double): top side of the box
+     * @param out (double[]): output x, y of each hit in the ray order, the entry before the exit (at least 4 slots)
+     * @return (int): the number of hits: 0 if the ray misses the box, 1 if its head is inside, 2 otherwise
+     */
+    public static int rayBox(double px, double py, double ux, double uy,
+                             double xMin, double yMin, double xMax, double yMax, double[] out){
+        return boundary(px, py, ux, uy, 0, Double.POSITIVE_INFINITY, xMin, yMin, xMax, yMax, out);
+    }
+
+    /**
+     * Intersection between a segment a, b and the boundary of a box
+     * @param ax (double): x-coordinate of the first end of the segment
+     * @param ay (double): y-coordinate of the first end of the segment
+     * @param bx (double): x-coordinate of the second end of the segment
+     * @param by (double): y-coordinate of the second end of the segment
+     * @param xMin (double): left side of the box
+     * @param yMin (double): bottom side of the box
+     * @param xMax (double): right side of the box
+     * @param yMax (double): top side of the box
+     * @param out (double[]): output x, y of each hit from a to b, the entry before the exit (at least 4 slots)
+     * @return (int): the number of hits, 0 if the segment misses the box or lies inside it
+     */
+    public static int segmentBox(double ax, double ay, double bx, double by,
+                                 double xMin, double yMin, double xMax, double yMax, double[] out){
+        return boundary(ax, ay, bx - ax, by - ay, 0, 1, xMin, yMin, xMax, yMax, out);
+    }
+
+    /**
+     * Intersection between the part t0 <= t <= t1 of the line p + t*u and the boundary of a box
+     * @param px (double): x-coordinate of the point of the line
+     * @param py (double): y-coordinate of the point of the line
+     * @param ux (double): x-coordinate of the direction of the line
+     * @param uy (double): y-coordinate of the direction of the line
+     * @param t0 (double): the lower parameter bound
+     * @param t1 (double): the upper parameter bound
+     * @param xMin (double): left side of the box
+     * @param yMin (double): bottom side of the box
+     * @param xMax (double): right side of the box
+     * @param yMax (double): top side of the box
+     * @param out (double[]): output x, y of each hit, the entry before the exit (at least 4 slots)
+     * @return (int): the number of hits
+     */
+    private static int boundary(double px, double py, double ux, double uy, double t0, double t1,
+                                double xMin, double yMin, double xMax, double yMax, double[] out){
+        if(!clip(px, py, ux, uy, t0, t1, xMin, yMin, xMax, yMax, out))
+            return 0;
+
+        // Only the bounds moved onto a side of the box are hits, the slots are read before being overwritten
+        double enter = out[0], exit = out[1];
+        boolean entered = out[2] >= 0, exited = out[3] >= 0;
+        int n = 0;
+        if(entered){
+            out[0] = px + enter * ux;
+            out[1] = py + enter * uy;
+            n++;
+        }
+        if(exited){
+            out[2*n] = px + exit * ux;
+            out[2*n+1] = py + exit * uy;
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,276 @@
+package blchatel.polygonmap.geometry2d;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+
+/**
+ * Growable array of 2D points stored as a structure of arrays (one array of x and one of y coordinates)
+ * The bulk kernels work in place on the primitive arrays, without any Vector allocation:
+ * - translate, scale, rotate and transform the points
+ * - distances between the points of two arrays
+ * - signed area and centroid of the polygon formed by a range of points
+ * - conversion of polygons and segments to AWT paths for the renderer
+ * Note: the loops are plain scalar loops over the coordinate arrays, which the JIT compiler vectorizes
+ * @see Vector
+ * @see Transform
+ */
+public final class PointArray {
+
+    /// Coordinates of the points, valid up to size
+    private double[] xs, ys;
+    private int size;
+
+    /** Default PointArray constructor */
+    public PointArray(){
+        this(16);
+    }
+
+    /**
+     * PointArray constructor
+     * @param capacity (int): the expected number of points
+     */
+    public PointArray(int capacity){
+        xs = new double[Math.max(capacity, 1)];
+        ys = new double[Math.max(capacity, 1)];
+    }
+
+    /** Remove all the points, keeping the allocated arrays */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * Make room for a given number of points
+     * @param capacity (int): the number of points
+     */
+    public void ensureCapacity(int capacity){
+        if(capacity > xs.length){
+            int length = Math.max(capacity, 2 * xs.length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+    }
+
+    /**
+     * Append a point
+     * @param x (double): x-coordinate of the point
+     * @param y (double): y-coordinate of the point
+     */
+    public void add(double x, double y){
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * Append a point
+     * @param v (Vector): the point
+     */
+    public void add(Vector v){
+        add(v.x, v.y);
+    }
+
+    /**
+     * Set the number of points, the new ones being undefined until set
+     * @param size (int): the new number of points
+     */
+    public void resize(int size){
+        ensureCapacity(size);
+        this.size = size;
+    }
+
+    /**
+     * Replace a point
+     * @param i (int): the point index
+     * @param x (double): the new x-coordinate
+     * @param y (double): the new y-coordinate
+     */
+    public void set(int i, double x, double y){
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    /** @return (int): the number of points */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i (int): the point index
+     * @return (double): the x-coordinate of the point
+     */
+    public double x(int i) {
+        return xs[i];
+    }
+
+    /**
+     * @param i (int): the point index
+     * @return (double): the y-coordinate of the point
+     */
+    public double y(int i) {
+        return ys[i];
+    }
+
+    /**
+     * @param i (int): the point index
+     * @return (Vector): a new vector of the point
+     */
+    public Vector get(int i) {
+        return new Vector(xs[i], ys[i]);
+    }
+
+    /** @return (double[]): the x-coordinates, valid up to size() (the array changes when the capacity grows) */
+    public double[] xs() {
+        return xs;
+    }
+
+    /** @return (double[]): the y-coordinates, valid up to size() (the array changes when the capacity grows) */
+    public double[] ys() {
+        return ys;
+    }
+
+
+    /// Bulk kernels
+
+    /**
+     * Translate all the points
+     * @param dx (double): the x translation
+     * @param dy (double): the y translation
+     */
+    public void translate(double dx, double dy){
+        for(int i = 0; i < size; i++)
+            xs[i] += dx;
+        for(int i = 0; i < size; i++)
+            ys[i] += dy;
+    }
+
+    /**
+     * Scale all the points about the origin
+     * @param sx (double): the x scale
+     * @param sy (double): the y scale
+     */
+    public void scale(double sx, double sy){
+        for(int i = 0; i < size; i++)
+            xs[i] *= sx;
+        for(int i = 0; i < size; i++)
+            ys[i] *= sy;
+    }
+
+    /**
+     * Rotate all the points about the origin
+     * @param angle (double): the angle, in radians
+     */
+    public void rotate(double angle){
+        double c = Math.cos(angle), s = Math.sin(angle);
+        for(int i = 0; i < size; i++){
+            double x = xs[i], y = ys[i];
+            xs[i] = c * x - s * y;
+            ys[i] = s * x + c * y;
+        }
+    }
+
+    /**
+     * Transform all the points
+     * @param t (Transform): the transform
+     */
+    public void transform(Transform t){
+        t.onPoints(xs, ys, 0, size);
+    }
+
+    /**
+     * Compute the distances between the points of this array and the ones of the same index of another one
+     * @param other (PointArray): the other array, at least as large as this one
+     * @param out (double[]): output distances, at least as large as this array
+     */
+    public void distances(PointArray other, double[] out){
+        double[] ox = other.xs, oy = other.ys;
+        for(int i = 0; i < size; i++){
+            double dx = xs[i] - ox[i], dy = ys[i] - oy[i];
+            out[i] = Math.sqrt(dx*dx + dy*dy);
+        }
+    }
+
+    /**
+     * Compute the signed area of the polygon formed by a range of points (shoelace formula)
+     * @param from (int): the first vertex (inclusive)
+     * @param to (int): the last vertex (exclusive)
+     * @return (double): the area, positive if the polygon is counter-clock-wise
+     */
+    public double area(int from, int to){
+        if(to - from < 3)
+            return 0;
+        // Relative to the first vertex, for precision
+        double x0 = xs[from], y0 = ys[from];
+        double sum = 0;
+        for(int i = from + 1; i < to - 1; i++)
+            sum += (xs[i] - x0) * (ys[i+1] - y0) - (xs[i+1] - x0) * (ys[i] - y0);
+        return sum / 2;
+    }
+
+    /**
+     * Compute the centroid of the polygon formed by a range of points
+     * @param from (int): the first vertex (inclusive)
+     * @param to (int): the last vertex (exclusive)
+     * @param out (double[]): output x and y coordinates of the centroid (the mean vertex if the polygon is degenerate)
+     * @return (double): the signed area of the polygon
+     */
+    public double centroid(int from, int to, double[] out){
+        double x0 = xs[from], y0 = ys[from];
+        double sum = 0, cx = 0, cy = 0;
+        for(int i = from + 1; i < to - 1; i++){
+            double ax = xs[i] - x0, ay = ys[i] - y0;
+            double bx = xs[i+1] - x0, by = ys[i+1] - y0;
+            double a = ax * by - bx * ay;
+            sum += a;
+            cx += a * (ax + bx);
+            cy += a * (ay + by);
+        }
+        if(Math.abs(sum) < Vector.EPSILON){
+            double mx = 0, my = 0;
+            for(int i = from; i < to; i++){
+                mx += xs[i];
+                my += ys[i];
+            }
+            out[0] = mx / (to - from);
+            out[1] = my / (to - from);
+        }
+        else {
+            out[0] = x0 + cx / (3 * sum);
+            out[1] = y0 + cy / (3 * sum);
+        }
+        return sum / 2;
+    }
+
+
+    /// Rendering
+
+    /**
+     * Append the closed polygon formed by a range of points to a path
+     * @param path (Path2D): the path
+     * @param from (int): the first vertex (inclusive)
+     * @param to (int): the last vertex (exclusive)
+     */
+    public void appendPolygon(Path2D path, int from, int to){
+        if(to <= from)
+            return;
+        path.moveTo(xs[from], ys[from]);
+        for(int i = from + 1; i < to; i++)
+            path.lineTo(xs[i], ys[i]);
+        path.closePath();
+    }
+
+    /**
+     * Build the path of the segments formed by the consecutive pairs of points (0-1, 2-3, etc.)
+     * @return (Path2D): the path
+     */
+    public Path2D toSegments(){
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, size);
+        for(int i = 0; i + 1 < size; i += 2){
+            path.moveTo(xs[i], ys[i]);
+            path.lineTo(xs[i+1], ys[i+1]);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,180 @@
+package blchatel.polygonmap.geometry2d;
+
+import java.util.Arrays;
+
+
+/**
+ * Set of 2D points with epsilon welding, mapping each point to a dense index
+ * The points are stored in primitive arrays (no boxing) and hashed by their coordinates quantized on a grid of
+ * cells of side epsilon, into an open addressing table with linear probing:
+ * - A point closer than epsilon to a stored one is welded to it (i.e. gets its index) instead of being added,
+ *   the stored points lying in the 3x3 cells around the point are the only candidates
+ * - The indices are given in insertion order, from 0 to size()-1
+ * Note: unlike Vector.equals, welding is not transitive: the first point of a cluster is the representative
+ * @see Vector
+ */
+public final class PointSet {
+
+    /// Welding distance and inverse of the cell side
+    private final double epsilon;
+    private final double inverse;
+    /// Coordinates and cell of the points, by index
+    private double[] xs, ys;
+    private long[] cx, cy;
+    private int size;
+    /// Open addressing table of the point indices plus one (0 for an empty slot)
+    private int[] table;
+    private int mask;
+
+    /**
+     * Default PointSet constructor
+     * @param epsilon (double): the welding distance
+     */
+    public PointSet(double epsilon){
+        this(epsilon, 16);
+    }
+
+    /**
+     * PointSet constructor
+     * @param epsilon (double): the welding distance
+     * @param capacity (int): the expected number of points
+     */
+    public PointSet(double epsilon, int capacity){
+        if(epsilon <= 0)
+            throw new IllegalArgumentException("The welding distance must be positive");
+        this.epsilon = epsilon;
+        this.inverse = 1 / epsilon;
+        capacity = Math.max(capacity, 4);
+        xs = new double[capacity];
+        ys = new double[capacity];
+        cx = new long[capacity];
+        cy = new long[capacity];
+        table = new int[Integer.highestOneBit(capacity - 1) << 2];
+        mask = table.length - 1;
+    }
+
+    /** Remove all the points, keeping the allocated arrays */
+    public void clear(){
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    /**
+     * Hash of a cell
+     * @param x (long): the cell column
+     * @param y (long): the cell row
+     * @return (int): the first slot of the cell into the table
+     */
+    private int slot(long x, long y){
+        long h = x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Find the stored point welded to the given one
+     * @param x (double): x-coordinate of the point
+     * @param y (double): y-coordinate of the point
+     * @return (int): the index of the first stored point closer than epsilon, -1 if there is none
+     */
+    public int indexOf(double x, double y){
+        long qx = (long)Math.floor(x * inverse), qy = (long)Math.floor(y * inverse);
+        double e2 = epsilon * epsilon;
+        int best = -1;
+        for(long u = qx-1; u <= qx+1; u++){
+            for(long v = qy-1; v <= qy+1; v++){
+                for(int s = slot(u, v); table[s] != 0; s = (s + 1) & mask){
+                    int i = table[s] - 1;
+                    if(cx[i] != u || cy[i] != v || (best >= 0 && i > best))
+                        continue;
+                    double dx = xs[i] - x, dy = ys[i] - y;
+                    if(dx*dx + dy*dy <= e2)
+                        best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add a point, unless it is welded to a stored one
+     * @param x (double): x-coordinate of the point
+     * @param y (double): y-coordinate of the point
+     * @return (int): the index of the stored point welded to the given one, or the index of the new point
+     */
+    public int add(double x, double y){
+        int i = indexOf(x, y);
+        if(i >= 0)
+            return i;
+
+        if(size == xs.length){
+            int capacity = 2 * size;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cx = Arrays.copyOf(cx, capacity);
+            cy = Arrays.copyOf(cy, capacity);
+        }
+        i = size++;
+        xs[i] = x;
+        ys[i] = y;
+        cx[i] = (long)Math.floor(x * inverse);
+        cy[i] = (long)Math.floor(y * inverse);
+        if(2 * size > table.length)
+            rehash(2 * table.length);
+        else
+            insert(i);
+        return i;
+    }
+
+    /**
+     * Insert a stored point into the table
+     * @param i (int): the point index
+     */
+    private void insert(int i){
+        int s = slot(cx[i], cy[i]);
+        while(table[s] != 0)
+            s = (s + 1) & mask;
+        table[s] = i + 1;
+    }
+
+    /**
+     * Resize the table and insert all the points again
+     * @param length (int): the new table length (a power of two)
+     */
+    private void rehash(int length){
+        table = new int[length];
+        mask = length - 1;
+        for(int i = 0; i < size; i++)
+            insert(i);
+    }
+
+    /**
+     * Indicate if a point is welded to a stored one
+     * @param x (double): x-coordinate of the point
+     * @param y (double): y-coordinate of the point
+     * @return (boolean): true if a stored point is closer than epsilon
+     */
+    public boolean contains(double x, double y){
+        return indexOf(x, y) >= 0;
+    }
+
+    /** @return (int): the number of stored points */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i (int): the point index
+     * @return (double): the x-coordinate of the point
+     */
+    public double x(int i) {
+        return xs[i];
+    }
+
+    /**
+     * @param i (int): the point index
+     * @return (double): the y-coordinate of the point
+     */
+    public double y(int i) {
+        return ys[i];
+    }
+}
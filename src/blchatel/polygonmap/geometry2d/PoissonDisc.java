@@ -0,0 +1,297 @@
+package blchatel.polygonmap.geometry2d;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Poisson-disc (blue noise) sampler, after Bridson's "Fast Poisson Disk Sampling in Arbitrary Dimensions"
+ * The samples are at least the radius apart and the sampled region is saturated: no other sample can be added
+ * - A background grid of cells of side radius/sqrt(2) holds at most one sample per cell, hence a candidate
+ *   is tested against the 5x5 cells around it only
+ * - Each accepted sample stays active until a given number of candidates around it (at a distance between
+ *   the radius and twice the radius) are all rejected
+ * - The samples are deterministic for a given random generator, and listed in the grid order
+ * - The tile-parallel variant splits the grid into tiles of at least 3 cells: the tiles are filled in 4 phases
+ *   (by parity of their column and row) in which no two tiles are closer than the radius, each tile using
+ *   the child stream of its index: the samples are deterministic whatever the number of threads
+ * @see Shape
+ * @see Random
+ * @see SplitRandom
+ */
+public final class PoissonDisc {
+
+    /** Default number of candidates tested around a sample before it gets inactive */
+    public static final int ATTEMPTS = 30;
+    /** Mean surface per sample of a saturated sampling, in units of the squared radius (measured) */
+    public static final double DENSITY = 1.6;
+    /** Side of the tiles of the parallel variant, in grid cells */
+    private static final int TILE = 64;
+
+    /// Minimum distance between two samples and number of candidates per active sample
+    private final double radius;
+    private final int attempts;
+
+    /**
+     * Default PoissonDisc constructor
+     * @param radius (double): the minimum distance between two samples
+     */
+    public PoissonDisc(double radius){
+        this(radius, ATTEMPTS);
+    }
+
+    /**
+     * PoissonDisc constructor
+     * @param radius (double): the minimum distance between two samples
+     * @param attempts (int): the number of candidates tested around a sample before it gets inactive
+     */
+    public PoissonDisc(double radius, int attempts){
+        if(radius <= 0 || attempts < 1)
+            throw new IllegalArgumentException("The radius and the number of attempts must be positive");
+        this.radius = radius;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Radius for which a saturated sampling of a given surface has about the given number of samples
+     * @param surface (double): the sampled surface
+     * @param count (int): the expected number of samples
+     * @return (double): the radius
+     */
+    public static double radius(double surface, int count){
+        return Math.sqrt(surface / (DENSITY * count));
+    }
+
+    /**
+     * Sample the given rectangle
+     * @param box (Rectangle): the sampled rectangle (border included)
+     * @param random (Random): the random generator
+     * @return (List of Vector): the samples
+     */
+    public List<Vector> sample(Rectangle box, Random random){
+        Grid grid = new Grid(box, null);
+        grid.fill(0, 0, grid.columns, grid.rows, random);
+        return grid.samples();
+    }
+
+    /**
+     * Sample the given shape, through the bounds of its path and its contains() test
+     * @param shape (Shape): the sampled shape (must be bounded)
+     * @param random (Random): the random generator
+     * @return (List of Vector): the samples
+     */
+    public List<Vector> sample(Shape shape, Random random){
+        if(shape instanceof Rectangle)
+            return sample((Rectangle)shape, random);
+        Rectangle2D b = shape.toPath().getBounds2D();
+        Grid grid = new Grid(new Rectangle(b.getX(), b.getY(), b.getWidth(), b.getHeight()), shape);
+        grid.fill(0, 0, grid.columns, grid.rows, random);
+        return grid.samples();
+    }
+
+    /**
+     * Sample the given rectangle in parallel, tile by tile
+     * @param box (Rectangle): the sampled rectangle (border included)
+     * @param random (SplitRandom): the generator from which the parent of the tile streams is split
+     * @param pool (ForkJoinPool): the pool filling the tiles
+     * @return (List of Vector): the samples
+     */
+    public List<Vector> sample(Rectangle box, SplitRandom random, ForkJoinPool pool){
+        // The parent of the tile streams, own to this sampling
+        SplitRandom job = random.split();
+        Grid grid = new Grid(box, null);
+        int tc = (grid.columns + TILE - 1) / TILE;
+        int tr = (grid.rows + TILE - 1) / TILE;
+        for(int phase = 0; phase < 4; phase++){
+            // Tiles of the phase: even or odd columns and rows
+            int pc = (tc - (phase & 1) + 1) / 2;
+            int pr = (tr - (phase >> 1) + 1) / 2;
+            pool.invoke(new TileTask(grid, job, phase, pc, tc, 0, pc * pr));
+        }
+        return grid.samples();
+    }
+
+
+    /** Background grid of the samples, at most one per cell */
+    private final class Grid {
+
+        /// Sampled rectangle and optional shape
+        private final Rectangle box;
+        private final Shape shape;
+        /// Grid dimensions and cell side
+        private final int columns, rows;
+        private final double side;
+        /// Sample of each cell, NaN if the cell is empty
+        private final double[] xs, ys;
+
+        /**
+         * Default Grid constructor
+         * @param box (Rectangle): the sampled rectangle
+         * @param shape (Shape): the sampled shape, null for the whole rectangle
+         */
+        Grid(Rectangle box, Shape shape){
+            this.box = box;
+            this.shape = shape;
+            this.side = radius / Math.sqrt(2);
+            this.columns = Math.max(1, (int)Math.ceil(box.w / side));
+            this.rows = Math.max(1, (int)Math.ceil(box.h / side));
+            long cells = (long)columns * rows;
+            if(cells > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("The radius is too small for the sampled region");
+            xs = new double[(int)cells];
+            ys = new double[(int)cells];
+            Arrays.fill(xs, Double.NaN);
+        }
+
+        /**
+         * Test a candidate against the samples of the 5x5 cells around it
+         * @param x (double): x-coordinate of the candidate
+         * @param y (double): y-coordinate of the candidate
+         * @param i (int): column of the candidate
+         * @param j (int): row of the candidate
+         * @return (boolean): true if no sample is closer than the radius
+         */
+        private boolean free(double x, double y, int i, int j){
+            if(!Double.isNaN(xs[j * columns + i]))
+                return false;
+            double r2 = radius * radius;
+            for(int v = Math.max(0, j-2); v <= Math.min(rows-1, j+2); v++){
+                for(int u = Math.max(0, i-2); u <= Math.min(columns-1, i+2); u++){
+                    double sx = xs[v * columns + u];
+                    if(Double.isNaN(sx))
+                        continue;
+                    double dx = sx - x, dy = ys[v * columns + u] - y;
+                    if(dx*dx + dy*dy < r2)
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Fill a range of cells with Bridson's algorithm, the samples of the other cells being fixed
+         * Darts are thrown in the range to start the active list, hence disconnected parts get sampled as well
+         * @param i0 (int): first column (inclusive)
+         * @param j0 (int): first row (inclusive)
+         * @param i1 (int): last column (exclusive)
+         * @param j1 (int): last row (exclusive)
+         * @param random (Random): the random generator
+         */
+        void fill(int i0, int j0, int i1, int j1, Random random){
+            double x0 = box.x + i0 * side, x1 = Math.min(box.x + box.w, box.x + i1 * side);
+            double y0 = box.y + j0 * side, y1 = Math.min(box.y + box.h, box.y + j1 * side);
+            int[] active = new int[16];
+
+            for(int dart = 0; dart < attempts; dart++){
+                int count = add(x0 + random.nextDouble() * (x1 - x0), y0 + random.nextDouble() * (y1 - y0),
+                        i0, j0, i1, j1, active, 0);
+                while(count > 0){
+                    if(count == active.length)
+                        active = Arrays.copyOf(active, 2 * count);
+                    int a = random.nextInt(count);
+                    int cell = active[a];
+                    double px = xs[cell], py = ys[cell];
+                    int added = 0;
+                    for(int k = 0; k < attempts && added == 0; k++){
+                        // Uniform in the annulus between the radius and twice the radius
+                        double angle = 2 * Math.PI * random.nextDouble();
+                        double d = radius * Math.sqrt(1 + 3 * random.nextDouble());
+                        added = add(px + d * Math.cos(angle), py + d * Math.sin(angle), i0, j0, i1, j1, active, count);
+                    }
+                    if(added > 0)
+                        count++;
+                    else
+                        active[a] = active[--count];
+                }
+            }
+        }
+
+        /**
+         * Add a candidate if it lies in the range of cells and in the shape, and if it is free
+         * @param x (double): x-coordinate of the candidate
+         * @param y (double): y-coordinate of the candidate
+         * @param i0 (int): first column of the range (inclusive)
+         * @param j0 (int): first row of the range (inclusive)
+         * @param i1 (int): last column of the range (exclusive)
+         * @param j1 (int): last row of the range (exclusive)
+         * @param active (int[]): the active cells, the new one is written at the given count
+         * @param count (int): the number of active cells
+         * @return (int): 1 if the candidate was added, 0 otherwise
+         */
+        private int add(double x, double y, int i0, int j0, int i1, int j1, int[] active, int count){
+            if(x < box.x || x > box.x + box.w || y < box.y || y > box.y + box.h)
+                return 0;
+            int i = Math.min(columns - 1, (int)((x - box.x) / side));
+            int j = Math.min(rows - 1, (int)((y - box.y) / side));
+            if(i < i0 || i >= i1 || j < j0 || j >= j1 || !free(x, y, i, j))
+                return 0;
+            if(shape != null && !shape.contains(new Vector(x, y)))
+                return 0;
+            int cell = j * columns + i;
+            xs[cell] = x;
+            ys[cell] = y;
+            active[count] = cell;
+            return 1;
+        }
+
+        /** @return (List of Vector): the samples, in the grid order */
+        List<Vector> samples(){
+            List<Vector> samples = new ArrayList<>();
+            for(int c = 0; c < xs.length; c++)
+                if(!Double.isNaN(xs[c]))
+                    samples.add(new Vector(xs[c], ys[c]));
+            return samples;
+        }
+    }
+
+
+    /** Fill a range of the tiles of a phase, splitting it in parallel tasks */
+    private final class TileTask extends RecursiveAction {
+
+        private final Grid grid;
+        private final SplitRandom random;
+        private final int phase, phaseColumns, tileColumns;
+        private final int from, to;
+
+        /**
+         * Default TileTask constructor
+         * @param grid (Grid): the background grid
+         * @param random (SplitRandom): the generator from which the stream of each tile is split
+         * @param phase (int): the phase, its bits being the parity of the column and the row of its tiles
+         * @param phaseColumns (int): the number of tile columns of the phase
+         * @param tileColumns (int): the number of tile columns of the grid
+         * @param from (int): first tile of the range, in the phase (inclusive)
+         * @param to (int): last tile of the range, in the phase (exclusive)
+         */
+        TileTask(Grid grid, SplitRandom random, int phase, int phaseColumns, int tileColumns, int from, int to){
+            this.grid = grid;
+            this.random = random;
+            this.phase = phase;
+            this.phaseColumns = phaseColumns;
+            this.tileColumns = tileColumns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= 1){
+                for(int t = from; t < to; t++){
+                    int u = 2 * (t % phaseColumns) + (phase & 1);
+                    int v = 2 * (t / phaseColumns) + (phase >> 1);
+                    long tile = (long)v * tileColumns + u;
+                    grid.fill(u * TILE, v * TILE, Math.min(grid.columns, (u+1) * TILE),
+                            Math.min(grid.rows, (v+1) * TILE), random.split(tile));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(grid, random, phase, phaseColumns, tileColumns, from, mid),
+                    new TileTask(grid, random, phase, phaseColumns, tileColumns, mid, to));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package blchatel.polygonmap.geometry2d;
+
+import java.math.BigDecimal;
+
+/**
+ * Adaptive exact geometric predicates with double precision inputs
+ * Each predicate is first evaluated with doubles together with a bound of the rounding error
+ * (following Shewchuk, "Adaptive Precision Floating-Point Arithmetic and Fast Robust Geometric Predicates", 1997).
+ * Only when the result is smaller than its error bound, hence its sign is uncertain, the predicate is evaluated
+ * again with exact arithmetic. The sign of the returned value is always exact.
+ * @see Vector
+ */
+public final class Predicates {
+
+    /** Half the distance between 1 and the next double: the relative rounding error of one operation */
+    private static final double EPSILON = Math.ulp(1.0) / 2;
+    /** Error bounds of the double evaluations */
+    private static final double ORIENT_BOUND = (3.0 + 16.0 * EPSILON) * EPSILON;
+    private static final double INCIRCLE_BOUND = (10.0 + 96.0 * EPSILON) * EPSILON;
+
+    /** Predicates is a static utility class, it cannot be instantiated */
+    private Predicates(){}
+
+    /**
+     * Orientation of three points
+     * @param ax (double): x-coordinate of the first point
+     * @param ay (double): y-coordinate of the first point
+     * @param bx (double): x-coordinate of the second point
+     * @param by (double): y-coordinate of the second point
+     * @param cx (double): x-coordinate of the third point
+     * @param cy (double): y-coordinate of the third point
+     * @return (double): > 0 if the points make a counter-clockwise turn, < 0 if clockwise and 0 if collinear.
+     * The value approximates twice the signed area of the triangle
+     */
+    public static double orient2d(double ax, double ay, double bx, double by, double cx, double cy){
+
+        double left = (ax - cx) * (by - cy);
+        double right = (ay - cy) * (bx - cx);
+        double det = left - right;
+
+        // Terms of opposite signs (or a zero term) cannot cancel each other
+        double sum;
+        if(left > 0){
+            if(right <= 0) return det;
+            sum = left + right;
+        }
+        else if(left < 0){
+            if(right >= 0) return det;
+            sum = -left - right;
+        }
+        else
+            return det;
+
+        if(det >= ORIENT_BOUND * sum || -det >= ORIENT_BOUND * sum)
+            return det;
+        return orient2dExact(ax, ay, bx, by, cx, cy);
+    }
+
+    /**
+     * Orientation of three points
+     * @param a (Vector): the first point
+     * @param b (Vector): the second point
+     * @param c (Vector): the third point
+     * @return (double): > 0 if the points make a counter-clockwise turn, < 0 if clockwise and 0 if collinear
+     */
+    public static double orient2d(Vector a, Vector b, Vector c){
+        return orient2d(a.x, a.y, b.x, b.y, c.x, c.y);
+    }
+
+    /**
+     * Position of a point relative to the circle through three points
+     * @param ax (double): x-coordinate of the first point of the circle
+     * @param ay (double): y-coordinate of the first point of the circle
+     * @param bx (double): x-coordinate of the second point of the circle
+     * @param by (double): y-coordinate of the second point of the circle
+     * @param cx (double): x-coordinate of the third point of the circle
+     * @param cy (double): y-coordinate of the third point of the circle
+     * @param dx (double): x-coordinate of the tested point
+     * @param dy (double): y-coordinate of the tested point
+     * @return (double): if a, b, c are in counter-clockwise order: > 0 if d is inside the circle, < 0 if outside
+     * and 0 if on it. The sign is reversed if a, b, c are in clockwise order
+     */
+    public static double incircle(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy){
+
+        double adx = ax - dx, ady = ay - dy;
+        double bdx = bx - dx, bdy = by - dy;
+        double cdx = cx - dx, cdy = cy - dy;
+
+        double bdxcdy = bdx * cdy, cdxbdy = cdx * bdy;
+        double cdxady = cdx * ady, adxcdy = adx * cdy;
+        double adxbdy = adx * bdy, bdxady = bdx * ady;
+
+        double alift = adx * adx + ady * ady;
+        double blift = bdx * bdx + bdy * bdy;
+        double clift = cdx * cdx + cdy * cdy;
+
+        double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) + clift * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+                + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+                + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+
+        if(det > INCIRCLE_BOUND * permanent || -det > INCIRCLE_BOUND * permanent)
+            return det;
+        return incircleExact(ax, ay, bx, by, cx, cy, dx, dy);
+    }
+
+    /**
+     * Position of a point relative to the circle through three points
+     * @param a (Vector): the first point of the circle
+     * @param b (Vector): the second point of the circle
+     * @param c (Vector): the third point of the circle
+     * @param d (Vector): the tested point
+     * @return (double): if a, b, c are in counter-clockwise order: > 0 if d is inside the circle, < 0 if outside
+     * and 0 if on it. The sign is reversed if a, b, c are in clockwise order
+     */
+    public static double incircle(Vector a, Vector b, Vector c, Vector d){
+        return incircle(a.x, a.y, b.x, b.y, c.x, c.y, d.x, d.y);
+    }
+
+
+    /// Exact evaluations: a double is exactly represented by a BigDecimal, and so are their sums and products
+
+    /**
+     * Exact orientation of three points
+     * @return (double): the sign of the exact determinant (-1, 0 or 1)
+     */
+    private static double orient2dExact(double ax, double ay, double bx, double by, double cx, double cy){
+        BigDecimal acx = exact(ax).subtract(exact(cx));
+        BigDecimal acy = exact(ay).subtract(exact(cy));
+        BigDecimal bcx = exact(bx).subtract(exact(cx));
+        BigDecimal bcy = exact(by).subtract(exact(cy));
+        return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+    }
+
+    /**
+     * Exact position of a point relative to a circle
+     * @return (double): the sign of the exact determinant (-1, 0 or 1)
+     */
+    private static double incircleExact(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy){
+        BigDecimal x = exact(dx), y = exact(dy);
+        BigDecimal adx = exact(ax).subtract(x), ady = exact(ay).subtract(y);
+        BigDecimal bdx = exact(bx).subtract(x), bdy = exact(by).subtract(y);
+        BigDecimal cdx = exact(cx).subtract(x), cdy = exact(cy).subtract(y);
+
+        BigDecimal alift = adx.multiply(adx).add(ady.multiply(ady));
+        BigDecimal blift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+        BigDecimal clift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+
+        return alift.multiply(bdx.multiply(cdy).subtract(cdx.multiply(bdy)))
+                .add(blift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+                .add(clift.multiply(adx.multiply(bdy).subtract(bdx.multiply(ady))))
+                .signum();
+    }
+
+    /**
+     * @param v (double): a finite double
+     * @return (BigDecimal): its exact value
+     */
+    private static BigDecimal exact(double v){
+        return new BigDecimal(v);
+    }
+}
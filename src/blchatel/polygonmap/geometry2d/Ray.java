@@ -0,0 +1,134 @@
+package blchatel.polygonmap.geometry2d;
+
+/**
+ * 2D Ray definition and implementation with double precision
+ * A ray is the set of points origin + t*direction for t >= 0, stored as four doubles:
+ * - There is no slope form, hence no special case nor division blow-up for the (near) vertical rays
+ * - Unlike HalfEdge, the ray is not a Shape and has no intersection handler: its queries go straight to the
+ *   primitive kernels of Intersections, writing into caller-owned output slots
+ * @see Intersections
+ * @see HalfEdge
+ * @see Vector
+ */
+public final class Ray {
+
+    /// Origin and direction of the ray
+    public final double x, y;
+    public final double dx, dy;
+
+    /**
+     * Ray constructor
+     * @param x (double): x-coordinate of the origin
+     * @param y (double): y-coordinate of the origin
+     * @param dx (double): x-coordinate of the direction
+     * @param dy (double): y-coordinate of the direction
+     */
+    public Ray(double x, double y, double dx, double dy){
+        if(dx == 0 && dy == 0)
+            throw new IllegalArgumentException("The direction of a ray cannot be null");
+        this.x = x;
+        this.y = y;
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Ray constructor
+     * @param origin (Vector): the origin
+     * @param direction (Vector): the direction
+     */
+    public Ray(Vector origin, Vector direction){
+        this(origin.x, origin.y, direction.x, direction.y);
+    }
+
+    /**
+     * Bisector of two sites, from their midpoint, with the first site on its left
+     * (i.e. the direction a Voronoi edge is traced out with the cell of a on its left)
+     * @param ax (double): x-coordinate of the first site
+     * @param ay (double): y-coordinate of the first site
+     * @param bx (double): x-coordinate of the second site
+     * @param by (double): y-coordinate of the second site
+     * @return (Ray): the bisector ray
+     */
+    public static Ray bisector(double ax, double ay, double bx, double by){
+        return new Ray((ax + bx)/2, (ay + by)/2, ay - by, bx - ax);
+    }
+
+    /** @return (Ray): the ray with the same origin and the opposite direction */
+    public Ray reverse(){
+        return new Ray(x, y, -dx, -dy);
+    }
+
+    /** @return (Vector): the origin of the ray */
+    public Vector getOrigin(){
+        return new Vector(x, y);
+    }
+
+    /** @return (Vector): the direction of the ray */
+    public Vector getDirection(){
+        return new Vector(dx, dy);
+    }
+
+    /**
+     * @param t (double): the parameter
+     * @return (double): the x-coordinate of the point of parameter t
+     */
+    public double x(double t){
+        return x + t * dx;
+    }
+
+    /**
+     * @param t (double): the parameter
+     * @return (double): the y-coordinate of the point of parameter t
+     */
+    public double y(double t){
+        return y + t * dy;
+    }
+
+    /**
+     * Side of a point relative to the support line of the ray
+     * @param px (double): x-coordinate of the point
+     * @param py (double): y-coordinate of the point
+     * @return (double): > 0 if the point is on the left, < 0 if on the right and 0 if on the support
+     */
+    public double side(double px, double py){
+        return Predicates.orient2d(x, y, x + dx, y + dy, px, py);
+    }
+
+    /**
+     * Indicate if a point lies on the ray
+     * @param px (double): x-coordinate of the point
+     * @param py (double): y-coordinate of the point
+     * @return (boolean): true if the point is closer than Vector.EPSILON to the support and not behind the origin
+     */
+    public boolean contains(double px, double py){
+        double wx = px - x, wy = py - y;
+        double cross = dx * wy - dy * wx;
+        return cross * cross < Vector.EPSILON * Vector.EPSILON * (dx*dx + dy*dy) && dx * wx + dy * wy >= 0;
+    }
+
+    /**
+     * Intersection with another ray
+     * @param other (Ray): the other ray
+     * @param out (double[]): output x, y of the intersection then its parameters on both rays (at least 4 slots)
+     * @return (int): 1 if the rays intersect, 0 otherwise
+     */
+    public int intersect(Ray other, double[] out){
+        return Intersections.rayRay(x, y, dx, dy, other.x, other.y, other.dx, other.dy, out);
+    }
+
+    /**
+     * Intersection with the boundary of a box
+     * @param box (Rectangle): the box
+     * @param out (double[]): output x, y of each hit, the entry before the exit (at least 4 slots)
+     * @return (int): the number of hits
+     */
+    public int intersect(Rectangle box, double[] out){
+        return Intersections.rayBox(x, y, dx, dy, box.x, box.y, box.x + box.w, box.y + box.h, out);
+    }
+
+    @Override
+    public String toString() {
+        return "Ray{o:("+ x + ", " + y + "), d:(" + dx + ", " + dy + ")}";
+    }
+}
@@ -104,11 +104,19 @@ public final class Rectangle extends Shape{
 
     @Override
     public Vector sample(Random random) {
-        double x = random.nextDouble()*w;
-        double y = random.nextDouble()*h;
+        double x = this.x + random.nextDouble()*w;
+        double y = this.y + random.nextDouble()*h;
         return new Vector(x, y);
     }
 
+    @Override
+    public void sample(Random random, double[] xs, double[] ys, int from, int to) {
+        for(int i = from; i < to; i++){
+            xs[i] = x + random.nextDouble()*w;
+            ys[i] = y + random.nextDouble()*h;
+        }
+    }
+
     @Override
     public Path2D toPath() {
         Path2D path = new Path2D.Double();
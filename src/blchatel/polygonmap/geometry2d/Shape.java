@@ -3,6 +3,9 @@
 package blchatel.polygonmap.geometry2d;
 
 import java.awt.geom.Path2D;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -13,6 +16,9 @@ import java.awt.geom.Path2D;
  */
 public abstract class Shape {
 
+    /** Number of samples of a parallel sampling job, independent of the number of threads */
+    private static final int SAMPLE_CHUNK = 1 << 16;
+
     private ShapeIntersection intersection;
 
     /**
@@ -68,7 +74,98 @@ public abstract class Shape {
      */
     public abstract Vector sample(Random random);
 
+    /**
+     * Sample (assume uniformly) vectors into the shape, writing their coordinates into the given buffers
+     * Note: the default implementation relies on sample(Random), the common shapes fill the buffers without allocation
+     * @param random (Random): the random generator
+     * @param xs (double[]): output x-coordinates
+     * @param ys (double[]): output y-coordinates
+     * @param from (int): first index to fill (inclusive)
+     * @param to (int): last index to fill (exclusive)
+     */
+    public void sample(Random random, double[] xs, double[] ys, int from, int to){
+        for(int i = from; i < to; i++){
+            Vector v = sample(random);
+            xs[i] = v.x;
+            ys[i] = v.y;
+        }
+    }
+
+    /**
+     * Sample vectors into the shape in parallel, writing their coordinates into the given buffers
+     * The range is cut into fixed chunks, each one sampled with the split stream of its index:
+     * the samples are the same for any number of threads
+     * @param random (SplitRandom): the generator from which the parent of the chunk streams is split
+     * @param xs (double[]): output x-coordinates
+     * @param ys (double[]): output y-coordinates
+     * @param from (int): first index to fill (inclusive)
+     * @param to (int): last index to fill (exclusive)
+     * @param pool (ForkJoinPool): the pool sampling the chunks
+     */
+    public final void sample(SplitRandom random, double[] xs, double[] ys, int from, int to, ForkJoinPool pool){
+        // The parent of the chunk streams, own to this sampling
+        SplitRandom job = random.split();
+        int chunks = (to - from + SAMPLE_CHUNK - 1) / SAMPLE_CHUNK;
+        pool.invoke(new SampleTask(job, xs, ys, from, to, 0, chunks));
+    }
+
+    /**
+     * Sample well spaced vectors into the shape (border included), no two of them being closer than the radius
+     * Note: the shape must be bounded
+     * @param radius (double): the minimum distance between two samples
+     * @param random (Random): the random generator
+     * @return (List of Vector): the samples
+     * @see PoissonDisc
+     */
+    public List<Vector> samplePoissonDisc(double radius, Random random){
+        return new PoissonDisc(radius).sample(this, random);
+    }
+
     /** @return (Path2D): AWT path used for drawing */
     public abstract Path2D toPath();
 
+
+    /** Sample a range of chunks, splitting it in parallel tasks */
+    private final class SampleTask extends RecursiveAction {
+
+        private final SplitRandom random;
+        private final double[] xs, ys;
+        private final int from, to;
+        private final int first, last;
+
+        /**
+         * Default SampleTask constructor
+         * @param random (SplitRandom): the generator from which the stream of each chunk is split
+         * @param xs (double[]): output x-coordinates
+         * @param ys (double[]): output y-coordinates
+         * @param from (int): first index of the whole sampling (inclusive)
+         * @param to (int): last index of the whole sampling (exclusive)
+         * @param first (int): first chunk of the range (inclusive)
+         * @param last (int): last chunk of the range (exclusive)
+         */
+        SampleTask(SplitRandom random, double[] xs, double[] ys, int from, int to, int first, int last){
+            this.random = random;
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if(last - first <= 1){
+                for(int c = first; c < last; c++){
+                    int start = from + c * SAMPLE_CHUNK;
+                    sample(random.split(c), xs, ys, start, Math.min(to, start + SAMPLE_CHUNK));
+                }
+                return;
+            }
+            int mid = (first + last) >>> 1;
+            invokeAll(new SampleTask(random, xs, ys, from, to, first, mid),
+                    new SampleTask(random, xs, ys, from, to, mid, last));
+        }
+    }
+
 }
@@ -10,6 +10,7 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
  * Hence s2 can directly select which intersection it wants from the model
  * By default the intersection are all defined below with a NotImplementedException that indicate
  * either the intersection is not defined or maybe define by symmetric case (s2.intersectWith(s1))
+ * Note: the hot paths use the allocation-free primitive kernels of Intersections instead of this visitor
  * @see Shape
  * @see Vector
  * @see Function
@@ -20,6 +21,7 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
  * @see Rectangle
  * @see Circle
  * @see Polygon
+ * @see Intersections
  * Add any new shape here
  */
 public interface ShapeIntersection {
@@ -0,0 +1,84 @@
+package blchatel.polygonmap.geometry2d;
+
+/**
+ * Splittable random generator (SplitMix64), as a drop-in Random for the Shape sampling
+ * Unlike util.Random, the state is a plain long, without any atomic update: a generator must not be shared
+ * by several threads, each parallel job uses its own child stream instead
+ * - split(id) derives the child stream of a task (e.g. a tile) from the key of this generator and the task id only:
+ *   the children do not depend on the values drawn so far nor on the thread running the task, hence a same seed
+ *   gives the same results for any number of threads
+ * - split() derives a child stream from the next value of this one, for sequential splitting.
+ *   A parallel job first takes its own parent with split() on the calling thread, then splits its tasks from it:
+ *   two jobs using the same task ids get independent streams
+ * http://xoshiro.di.unimi.it/splitmix64.c
+ * @see Random
+ */
+public class SplitRandom extends Random {
+
+    /// Golden ratio increment of the state
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /// Key of the children streams, derived from the seed
+    private long root;
+    /// Current state
+    private long state;
+
+    /**
+     * SplitRandom constructor
+     * @param seed (long): random seed for controlling the sequence
+     */
+    public SplitRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Mix the bits of a value (the SplitMix64 finalizer)
+     * @param z (long): the value
+     * @return (long): the mixed value
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Child stream of a task
+     * @param id (long): the task id
+     * @return (SplitRandom): a generator depending on the seed of this one and on the id only
+     */
+    public SplitRandom split(long id) {
+        return new SplitRandom(root ^ mix64((id + 1) * GAMMA));
+    }
+
+    /** @return (SplitRandom): a child stream seeded by the next value of this one */
+    public SplitRandom split() {
+        return new SplitRandom(nextLong());
+    }
+
+
+    /// SplitRandom extends Random
+
+    @Override
+    public void setSeed(long seed) {
+        // Also called by the util.Random constructor
+        root = mix64(seed);
+        state = root;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int)(nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GAMMA;
+        return mix64(state);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
@@ -54,6 +54,21 @@ public final class Transform {
         );
     }
     
+    /**
+     * Transforms points in place.
+     * @param xs (double[]): x-coordinates of the points, not null
+     * @param ys (double[]): y-coordinates of the points, not null
+     * @param from (int): first point (inclusive)
+     * @param to (int): last point (exclusive)
+     */
+    public void onPoints(double[] xs, double[] ys, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double x = xs[i], y = ys[i];
+            xs[i] = x * m00 + y * m01 + m02;
+            ys[i] = x * m10 + y * m11 + m12;
+        }
+    }
+    
     /**
      * Transforms vector.
      * @param v (Vector): point, not null
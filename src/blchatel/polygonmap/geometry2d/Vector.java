@@ -155,9 +155,10 @@ public final class Vector extends Shape implements Serializable{
 
     /// Vector implements Serializable
 
+    // Exact equality, consistent with the hash code (0.0 and -0.0 being equal): see PointSet for the epsilon welding
     @Override
     public int hashCode() {
-        return Double.hashCode(x) ^ Double.hashCode(y);
+        return 31 * Double.hashCode(x + 0.0) + Double.hashCode(y + 0.0);
     }
 
     @Override
@@ -165,7 +166,7 @@ public final class Vector extends Shape implements Serializable{
         if (object == null || !(object instanceof Vector))
             return false;
         Vector other = (Vector)object;
-        return Math.abs((x-other.x) + (y-other.y)) < EPSILON;
+        return x == other.x && y == other.y;
     }
 
     @Override
@@ -177,7 +178,7 @@ public final class Vector extends Shape implements Serializable{
 
     @Override
     public boolean contains(Vector v) {
-        return equals(v);
+        return sqrDstTo(v) < EPSILON * EPSILON;
     }
 
     @Override
@@ -0,0 +1,440 @@
+package blchatel.polygonmap.relaxation;
+
+import blchatel.polygonmap.fortune.Voronoi;
+import blchatel.polygonmap.fortune.VoronoiCell;
+import blchatel.polygonmap.fortune.VoronoiDiagram;
+import blchatel.polygonmap.fortune.VoronoiEngine;
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.PointSet;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Centroidal Voronoi tessellation optimizer
+ * The CVT energy F = sum_i integral over cell i of |x - s_i|^2 has the gradient dF/ds_i = 2 m_i (s_i - c_i),
+ * with m_i the area and c_i the centroid of the cell i: Lloyd's iteration is a fixed step gradient descent.
+ * Liu, Yang, et al. "On centroidal Voronoi tessellation - energy smoothness and fast computation."
+ * ACM Transactions on Graphics 28.4 (2009)
+ * - LBFGS minimizes the energy with a limited memory quasi-Newton method, preconditioned by the Lloyd step
+ *   (i.e. its first direction is the Lloyd step), with a backtracking line search
+ * - OVER_RELAXED moves each site beyond its centroid by a factor omega, reduced each time the energy increases
+ * - LLOYD is the plain Lloyd iteration, for comparison
+ * Each energy evaluation is a full diagram build. A step bringing two sites closer than Vector.EPSILON (e.g. clamped
+ * onto the same corner of the box) is rejected as if the energy increased, since the engines need distinct sites.
+ * The optimization stops when no site is farther than the tolerance
+ * from its centroid, when the energy reaches the target or after the maximum number of iterations.
+ * @see LloydRelaxation
+ * @see VoronoiCell#energy()
+ */
+public class CvtOptimizer {
+
+    /** Available optimization methods */
+    public enum Method {
+        /** Sites moved to the centroids */
+        LLOYD,
+        /** Sites moved beyond the centroids */
+        OVER_RELAXED,
+        /** Limited memory quasi-Newton */
+        LBFGS
+    }
+
+    /** Listener notified after each iteration */
+    public interface Listener {
+
+        /**
+         * Called after each iteration
+         * @param iteration (int): the iteration number (starting at 0 for the initial sites)
+         * @param diagram (VoronoiDiagram): the diagram of the current sites
+         * @param energy (double): the CVT energy of the current sites
+         * @param maxDisplacement (double): the maximum distance between a site and the centroid of its cell
+         */
+        void onIteration(int iteration, VoronoiDiagram diagram, double energy, double maxDisplacement);
+    }
+
+    /** Number of correction pairs kept by the quasi-Newton method */
+    private static final int MEMORY = 7;
+    /** Sufficient decrease constant of the line search (Armijo) */
+    private static final double ARMIJO = 1e-4;
+    /** Maximum number of step halvings of the line search */
+    private static final int MAX_HALVINGS = 8;
+
+    /// Bounding box of the diagrams
+    private final Rectangle box;
+    /// Maximum number of iterations
+    private final int maxIterations;
+    /// The optimization stops when no site is farther than the tolerance from its centroid
+    private final double tolerance;
+    /// The engine building the first diagram
+    private VoronoiEngine engine;
+    /// The method, the over-relaxation factor and the target energy
+    private Method method = Method.LBFGS;
+    private double omega = 1.8;
+    private double targetEnergy;
+    /// Optional listener
+    private Listener listener;
+
+    /// Statistics of the last optimization
+    private int iterations;
+    private int builds;
+    private double energy;
+    private double maxDisplacement;
+    private VoronoiDiagram diagram;
+
+    /// Working arrays: sites and gradient (x and y interleaved), masses of the cells and site list of the builds
+    private double[] x, g, xNew, gNew, direction, mass, massNew;
+    private final List<Vector> sites = new ArrayList<>();
+    /// Welding of the sites of a build, detecting the ones closer than Vector.EPSILON
+    private PointSet welding;
+
+    /**
+     * Default CvtOptimizer constructor
+     * @param box (Rectangle): the bounding box of the diagrams
+     * @param maxIterations (int): the maximum number of iterations
+     * @param tolerance (double): the maximum distance between a site and its centroid under which the optimization stops
+     */
+    public CvtOptimizer(Rectangle box, int maxIterations, double tolerance){
+        if(maxIterations < 0)
+            throw new IllegalArgumentException("The number of iterations cannot be negative");
+        this.box = box;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.engine = new Voronoi.Builder(box);
+    }
+
+    /**
+     * Method setter
+     * @param method (Method): the optimization method
+     */
+    public void setMethod(Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Over-relaxation factor setter, used by the OVER_RELAXED method
+     * @param omega (double): the factor, between 1 (Lloyd) and 2
+     */
+    public void setOmega(double omega) {
+        if(omega < 1 || omega >= 2)
+            throw new IllegalArgumentException("The over-relaxation factor must be in [1, 2)");
+        this.omega = omega;
+    }
+
+    /**
+     * Target energy setter
+     * @param targetEnergy (double): the energy under which the optimization stops, 0 to ignore it
+     */
+    public void setTargetEnergy(double targetEnergy) {
+        this.targetEnergy = targetEnergy;
+    }
+
+    /**
+     * Engine setter. The diagram of a previous optimization is dropped
+     * @param engine (VoronoiEngine): the engine building the diagrams
+     */
+    public void setEngine(VoronoiEngine engine) {
+        this.engine = engine;
+        this.diagram = null;
+    }
+
+    /**
+     * Listener setter
+     * @param listener (Listener): notified after each iteration, may be null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Optimize the given sites
+     * @param initial (Set of Vector): the initial sites, farther than Vector.EPSILON from each other
+     * @return (Set of Vector): the optimized sites
+     */
+    public Set<Vector> optimize(Set<Vector> initial){
+        return LloydRelaxation.toSet(optimize(LloydRelaxation.toArray(initial)));
+    }
+
+    /**
+     * Optimize the given sites
+     * @param initial (PointArray): the initial sites, farther than Vector.EPSILON from each other
+     * @return (PointArray): the optimized sites, a new array
+     */
+    public PointArray optimize(PointArray initial){
+
+        int n = initial.size();
+        if(x == null || x.length < 2*n){
+            x = new double[2*n];
+            g = new double[2*n];
+            xNew = new double[2*n];
+            gNew = new double[2*n];
+            direction = new double[2*n];
+            mass = new double[n];
+            massNew = new double[n];
+        }
+        for(int i = 0; i < n; i++){
+            x[2*i] = initial.x(i);
+            x[2*i + 1] = initial.y(i);
+        }
+
+        iterations = 0;
+        builds = 0;
+        energy = evaluate(x, n, g, mass);
+        if(energy == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("The sites must be farther than Vector.EPSILON from each other");
+        maxDisplacement = maxDisplacement(n);
+        if(listener != null)
+            listener.onIteration(0, diagram, energy, maxDisplacement);
+
+        if(method == Method.LBFGS)
+            lbfgs(n);
+        else
+            lloyd(n);
+
+        PointArray result = new PointArray(n);
+        for(int i = 0; i < n; i++)
+            result.add(x[2*i], x[2*i + 1]);
+        return result;
+    }
+
+    /**
+     * @return (boolean): true if the optimization must stop
+     */
+    private boolean done(){
+        return iterations >= maxIterations || maxDisplacement <= tolerance || energy <= targetEnergy;
+    }
+
+    /**
+     * Lloyd iterations, possibly over-relaxed
+     * @param n (int): the number of sites
+     */
+    private void lloyd(int n){
+        double factor = method == Method.OVER_RELAXED ? omega : 1;
+        while(!done()){
+            // The centroid is s - g / (2m)
+            for(int i = 0; i < 2*n; i++)
+                xNew[i] = x[i] - factor * g[i] / (2 * mass[i / 2]);
+            clamp(xNew, n);
+            double e = evaluate(xNew, n, gNew, massNew);
+            // Welded sites: the step is reduced, or the current sites kept if the Lloyd step itself welds them
+            if(e == Double.POSITIVE_INFINITY){
+                if(factor == 1){
+                    evaluate(x, n, gNew, massNew);
+                    return;
+                }
+                factor = 1 + (factor - 1) / 2;
+                continue;
+            }
+            if(e > energy)
+                factor = 1 + (factor - 1) / 2;
+            accept(e, n);
+        }
+    }
+
+    /**
+     * Limited memory BFGS iterations, with the Lloyd step as initial inverse Hessian
+     * @param n (int): the number of sites
+     */
+    private void lbfgs(int n){
+        double[][] s = new double[MEMORY][2*n], y = new double[MEMORY][2*n];
+        double[] rho = new double[MEMORY], alpha = new double[MEMORY];
+        // Candidate correction pair, swapped into the memory only if it satisfies the curvature condition
+        double[] sNext = new double[2*n], yNext = new double[2*n];
+        int stored = 0, newest = -1;
+
+        while(!done()){
+
+            // Two-loop recursion: direction = -H g
+            System.arraycopy(g, 0, direction, 0, 2*n);
+            for(int k = 0; k < stored; k++){
+                int j = (newest - k + MEMORY) % MEMORY;
+                alpha[j] = rho[j] * dot(s[j], direction, n);
+                axpy(-alpha[j], y[j], direction, n);
+            }
+            for(int i = 0; i < 2*n; i++)
+                direction[i] /= 2 * mass[i / 2];
+            for(int k = stored - 1; k >= 0; k--){
+                int j = (newest - k + MEMORY) % MEMORY;
+                double beta = rho[j] * dot(y[j], direction, n);
+                axpy(alpha[j] - beta, s[j], direction, n);
+            }
+            for(int i = 0; i < 2*n; i++)
+                direction[i] = -direction[i];
+
+            // Not a descent direction: restart from the Lloyd step
+            double slope = dot(g, direction, n);
+            if(slope >= 0){
+                stored = 0;
+                for(int i = 0; i < 2*n; i++)
+                    direction[i] = -g[i] / (2 * mass[i / 2]);
+                slope = dot(g, direction, n);
+            }
+
+            // Backtracking line search
+            double step = 1, e = Double.POSITIVE_INFINITY;
+            boolean decrease = false;
+            for(int h = 0; h <= MAX_HALVINGS && !decrease; h++, step /= 2){
+                for(int i = 0; i < 2*n; i++)
+                    xNew[i] = x[i] + step * direction[i];
+                clamp(xNew, n);
+                e = evaluate(xNew, n, gNew, massNew);
+                decrease = e <= energy + ARMIJO * step * slope;
+            }
+
+            // No sufficient decrease: the memory is dropped and the Lloyd step tried,
+            // if the Lloyd step itself fails the current sites are kept (and their diagram rebuilt)
+            if(!decrease){
+                if(stored > 0){
+                    stored = 0;
+                    continue;
+                }
+                evaluate(x, n, gNew, massNew);
+                return;
+            }
+
+            // Correction pair, the oldest one being replaced only if the new one has a positive curvature
+            double sy = 0;
+            for(int i = 0; i < 2*n; i++){
+                sNext[i] = xNew[i] - x[i];
+                yNext[i] = gNew[i] - g[i];
+                sy += sNext[i] * yNext[i];
+            }
+            if(sy > 0){
+                newest = (newest + 1) % MEMORY;
+                double[] t = s[newest]; s[newest] = sNext; sNext = t;
+                t = y[newest]; y[newest] = yNext; yNext = t;
+                rho[newest] = 1 / sy;
+                stored = Math.min(stored + 1, MEMORY);
+            }
+
+            accept(e, n);
+        }
+    }
+
+    /**
+     * Accept the new sites
+     * @param e (double): their energy
+     * @param n (int): the number of sites
+     */
+    private void accept(double e, int n){
+        double[] t = x; x = xNew; xNew = t;
+        t = g; g = gNew; gNew = t;
+        t = mass; mass = massNew; massNew = t;
+        energy = e;
+        maxDisplacement = maxDisplacement(n);
+        iterations++;
+        if(listener != null)
+            listener.onIteration(iterations, diagram, energy, maxDisplacement);
+    }
+
+    /**
+     * Build the diagram of the given sites and compute its energy
+     * @param sx (double[]): the sites, x and y interleaved
+     * @param n (int): the number of sites
+     * @param gradient (double[]): output, the gradient of the energy
+     * @param masses (double[]): output, the area of each cell
+     * @return (double): the energy, infinite if two sites are closer than Vector.EPSILON (nothing is built then)
+     */
+    private double evaluate(double[] sx, int n, double[] gradient, double[] masses){
+        if(welding == null)
+            welding = new PointSet(Vector.EPSILON, n);
+        else
+            welding.clear();
+        for(int i = 0; i < n; i++)
+            if(welding.add(sx[2*i], sx[2*i + 1]) != i)
+                return Double.POSITIVE_INFINITY;
+
+        sites.clear();
+        for(int i = 0; i < n; i++)
+            sites.add(new Vector(sx[2*i], sx[2*i + 1]));
+        if(diagram == null)
+            diagram = engine.build(sites);
+        else
+            diagram.reset(sites);
+        builds++;
+
+        double e = 0;
+        List<VoronoiCell> cells = diagram.getCells();
+        if(cells.size() != n)
+            throw new IllegalStateException("The diagram has " + cells.size() + " cells for " + n + " sites");
+        for(VoronoiCell cell : cells){
+            int i = cell.getId();
+            // The surface of a cell is twice its area
+            double m = cell.surface() / 2;
+            Vector c = cell.center();
+            masses[i] = m;
+            gradient[2*i] = 2 * m * (sx[2*i] - c.x);
+            gradient[2*i + 1] = 2 * m * (sx[2*i + 1] - c.y);
+            e += cell.energy();
+        }
+        return e;
+    }
+
+    /**
+     * @param n (int): the number of sites
+     * @return (double): the maximum distance between a site and its centroid
+     */
+    private double maxDisplacement(int n){
+        double max = 0;
+        for(int i = 0; i < n; i++){
+            double dx = g[2*i] / (2 * mass[i]), dy = g[2*i + 1] / (2 * mass[i]);
+            max = Math.max(max, dx*dx + dy*dy);
+        }
+        return Math.sqrt(max);
+    }
+
+    /**
+     * Keep the sites strictly inside the box. Several sites may be clamped onto the same point: the step is rejected
+     * @param sx (double[]): the sites, x and y interleaved
+     * @param n (int): the number of sites
+     */
+    private void clamp(double[] sx, int n){
+        double ex = box.w * 1e-9, ey = box.h * 1e-9;
+        for(int i = 0; i < n; i++){
+            sx[2*i] = Math.max(box.x + ex, Math.min(box.x + box.w - ex, sx[2*i]));
+            sx[2*i + 1] = Math.max(box.y + ey, Math.min(box.y + box.h - ey, sx[2*i + 1]));
+        }
+    }
+
+    /** @return (double): the dot product of the first 2n coordinates of a and b */
+    private static double dot(double[] a, double[] b, int n){
+        double sum = 0;
+        for(int i = 0; i < 2*n; i++)
+            sum += a[i] * b[i];
+        return sum;
+    }
+
+    /** Add factor * a to the first 2n coordinates of b */
+    private static void axpy(double factor, double[] a, double[] b, int n){
+        for(int i = 0; i < 2*n; i++)
+            b[i] += factor * a[i];
+    }
+
+    /** @return (int): the number of iterations actually used by the last optimization */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** @return (int): the number of diagrams built by the last optimization */
+    public int getBuilds() {
+        return builds;
+    }
+
+    /** @return (double): the CVT energy of the optimized sites */
+    public double getEnergy() {
+        return energy;
+    }
+
+    /** @return (double): the maximum distance between an optimized site and its centroid */
+    public double getMaxDisplacement() {
+        return maxDisplacement;
+    }
+
+    /** @return (VoronoiDiagram): the diagram of the optimized sites, null if no optimization was ever done */
+    public VoronoiDiagram getDiagram() {
+        return diagram;
+    }
+}
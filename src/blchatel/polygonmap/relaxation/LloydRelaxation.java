@@ -0,0 +1,413 @@
+package blchatel.polygonmap.relaxation;
+
+import blchatel.polygonmap.fortune.DelaunayVoronoi;
+import blchatel.polygonmap.fortune.Voronoi;
+import blchatel.polygonmap.fortune.VoronoiCell;
+import blchatel.polygonmap.fortune.VoronoiDiagram;
+import blchatel.polygonmap.fortune.VoronoiEngine;
+import blchatel.polygonmap.geometry2d.DensityField;
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.PointSet;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Lloyd's relaxation engine
+ * https://en.wikipedia.org/wiki/Lloyd's_algorithm
+ * Each iteration builds the Voronoi diagram of the sites and moves each site to the centroid of its cell.
+ * - The centroids are computed in parallel across the cells on a ForkJoinPool
+ * - The maximum and mean site displacements are tracked and the relaxation stops as soon as
+ *   the maximum displacement is below the tolerance (or when the maximum number of iterations is reached)
+ * - The diagram and the working arrays are allocated by the first iteration and recycled by the following ones:
+ *   the sites and the centroids are point arrays, the displacements being computed by their distances kernel
+ * - The diagrams are built by a VoronoiEngine, the sequential Fortune engine by default
+ * - In local mode, only the sites moving more than a threshold are moved, on a mutable Delaunay diagram:
+ *   only their cells and their neighbor ones are rebuilt and get a new centroid, the centroids of the other
+ *   cells being kept. The sites moving less than the threshold stay in place, even at the end of the relaxation
+ * - With a density field, the sites move to the weighted centroids of their cells: the cells get smaller
+ *   where the density is higher
+ * @see VoronoiEngine
+ * @see VoronoiCell
+ */
+public class LloydRelaxation {
+
+    /** Minimum number of cells handled by a single centroid task */
+    private static final int CHUNK = 512;
+    /** Fraction of moving sites above which the whole diagram is rebuilt, even in local mode */
+    private static final double LOCAL_FRACTION = 0.125;
+
+    /** Listener notified after each iteration */
+    public interface Listener {
+
+        /**
+         * Called after each iteration
+         * @param iteration (int): the iteration number (starting at 1)
+         * @param diagram (VoronoiDiagram): the diagram built during this iteration (i.e. before the sites moved)
+         * @param maxDisplacement (double): the maximum site displacement of this iteration
+         * @param meanDisplacement (double): the mean site displacement of this iteration
+         */
+        void onIteration(int iteration, VoronoiDiagram diagram, double maxDisplacement, double meanDisplacement);
+    }
+
+    /// Maximum number of iterations
+    private final int maxIterations;
+    /// The relaxation stops when no site moves more than the tolerance
+    private final double tolerance;
+    /// The pool computing the centroids
+    private final ForkJoinPool pool;
+    /// The engine building the first diagram
+    private VoronoiEngine engine;
+    /// Displacement above which a site is moved in local mode, 0 if the local mode is disabled
+    private double localThreshold;
+    /// Optional density field of the weighted centroids
+    private DensityField density;
+    /// Optional listener
+    private Listener listener;
+
+    /// Statistics of the last relaxation
+    private int iterations;
+    private double maxDisplacement;
+    private double meanDisplacement;
+    private VoronoiDiagram diagram;
+    /// The diagram of the last relaxation in local mode, null otherwise
+    private DelaunayVoronoi local;
+
+    /// Working arrays, recycled between iterations and relaxations: cells, their sites, centroids and displacements
+    private VoronoiCell[] cells = new VoronoiCell[0];
+    private final PointArray positions = new PointArray();
+    private final PointArray centroids = new PointArray();
+    private double[] displacements = new double[0];
+    /// Cells rebuilt by the last local moves (the moved ones and their neighbors), marked with the current stamp
+    private int[] dirty = new int[0];
+    private int[] marks = new int[0];
+    private int dirtyCount, stamp;
+    /// Distinct centroids of an iteration, i.e. the sites of the next one, and their welding
+    private final List<Vector> next = new ArrayList<>();
+    private PointSet welding;
+
+    /**
+     * Default LloydRelaxation constructor, using the common pool
+     * @param box (Rectangle): the bounding box of the diagrams
+     * @param maxIterations (int): the maximum number of iterations
+     * @param tolerance (double): the maximum site displacement under which the relaxation stops
+     */
+    public LloydRelaxation(Rectangle box, int maxIterations, double tolerance){
+        this(box, maxIterations, tolerance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * LloydRelaxation constructor
+     * @param box (Rectangle): the bounding box of the diagrams
+     * @param maxIterations (int): the maximum number of iterations
+     * @param tolerance (double): the maximum site displacement under which the relaxation stops
+     * @param pool (ForkJoinPool): the pool computing the centroids
+     */
+    public LloydRelaxation(Rectangle box, int maxIterations, double tolerance, ForkJoinPool pool){
+        if(maxIterations < 0)
+            throw new IllegalArgumentException("The number of iterations cannot be negative");
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.pool = pool;
+        this.engine = new Voronoi.Builder(box);
+    }
+
+    /**
+     * Engine setter. The diagram of a previous relaxation is dropped
+     * @param engine (VoronoiEngine): the engine building the diagrams, a DelaunayVoronoi.Builder in local mode
+     */
+    public void setEngine(VoronoiEngine engine) {
+        if(localThreshold > 0 && !(engine instanceof DelaunayVoronoi.Builder))
+            throw new IllegalArgumentException("The local mode needs the DelaunayVoronoi engine");
+        this.engine = engine;
+        this.diagram = null;
+    }
+
+    /**
+     * Enable the local mode: the sites moving less than the threshold are left in place and
+     * only the cells around the moving ones are rebuilt. The local edits need the mutable Delaunay diagrams:
+     * the DelaunayVoronoi engine must be set first
+     * Note: with a threshold greater than the tolerance, the relaxation stops as soon as no site moves anymore
+     * @param threshold (double): the displacement above which a site is moved, 0 to disable the local mode
+     */
+    public void setLocalThreshold(double threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("The threshold cannot be negative");
+        if(threshold > 0 && !(engine instanceof DelaunayVoronoi.Builder))
+            throw new IllegalStateException("The local mode needs the DelaunayVoronoi engine, set it first");
+        this.localThreshold = threshold;
+    }
+
+    /**
+     * Density setter
+     * @param density (DensityField): the density of the weighted centroids, null for the uniform density
+     */
+    public void setDensity(DensityField density) {
+        this.density = density;
+    }
+
+    /**
+     * Listener setter
+     * @param listener (Listener): notified after each iteration, may be null
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Relax the given sites
+     * @param sites (Set of Vector): the initial sites
+     * @return (Set of Vector): the relaxed sites
+     */
+    public Set<Vector> relax(Set<Vector> sites){
+        return toSet(relax(toArray(sites)));
+    }
+
+    /**
+     * Relax the given sites
+     * @param sites (PointArray): the initial sites, the ones closer than Vector.EPSILON being welded
+     * @return (PointArray): the relaxed sites, a new array
+     */
+    public PointArray relax(PointArray sites){
+
+        iterations = 0;
+        maxDisplacement = Double.POSITIVE_INFINITY;
+        meanDisplacement = Double.POSITIVE_INFINITY;
+        if(iterations >= maxIterations)
+            return copy(sites);
+
+        List<Vector> initial = weld(sites.xs(), sites.ys(), sites.size());
+        if(diagram == null)
+            diagram = engine.build(initial);
+        else
+            diagram.reset(initial);
+        // The engine is a DelaunayVoronoi.Builder in local mode (checked by the setters)
+        local = localThreshold > 0 ? (DelaunayVoronoi) diagram : null;
+
+        // All the centroids are computed after a full build, only the ones of the rebuilt cells after local moves
+        boolean rebuilt = true;
+        while(true){
+
+            // Two centroids may be welded by the previous iteration, hence the number of cells may decrease
+            int n = diagram.getCells().size();
+            if(rebuilt){
+                if(cells.length < n){
+                    cells = new VoronoiCell[n];
+                    displacements = new double[n];
+                }
+                diagram.getCells().toArray(cells);
+                positions.resize(n);
+                centroids.resize(n);
+                for(int i = 0; i < n; i++)
+                    positions.set(i, cells[i].getX(), cells[i].getY());
+                pool.invoke(new CentroidTask(cells, density, centroids, null, 0, n));
+            }
+            else
+                pool.invoke(new CentroidTask(cells, density, centroids, dirty, 0, dirtyCount));
+            centroids.distances(positions, displacements);
+
+            double max = 0, sum = 0;
+            for(int i = 0; i < n; i++){
+                max = Math.max(max, displacements[i]);
+                sum += displacements[i];
+            }
+
+            iterations++;
+            maxDisplacement = max;
+            meanDisplacement = n > 0 ? sum / n : 0;
+            if(listener != null)
+                listener.onIteration(iterations, diagram, maxDisplacement, meanDisplacement);
+            if(iterations >= maxIterations || maxDisplacement <= tolerance)
+                break;
+            if(local != null){
+                int moved = moveLocally(n);
+                if(moved == 0)
+                    break;
+                rebuilt = moved < 0;
+                if(!rebuilt)
+                    continue;
+            }
+            diagram.reset(next(n));
+        }
+
+        next(diagram.getCells().size());
+        PointArray relaxed = new PointArray(welding.size());
+        for(int i = 0; i < welding.size(); i++)
+            relaxed.add(welding.x(i), welding.y(i));
+        return relaxed;
+    }
+
+    /**
+     * Weld the next sites: the next site of a cell is its centroid, or its current site in local mode
+     * if it moves less than the threshold
+     * @param n (int): the number of cells
+     * @return (List of Vector): the distinct next sites, in the order of their cells (the list is reused)
+     */
+    private List<Vector> next(int n){
+        // The sites staying in place are the current ones, the others the centroids
+        if(local != null)
+            for(int i = 0; i < n; i++)
+                if(displacements[i] <= localThreshold)
+                    centroids.set(i, positions.x(i), positions.y(i));
+        return weld(centroids.xs(), centroids.ys(), n);
+    }
+
+    /**
+     * Weld the sites closer than Vector.EPSILON: the engines need distinct sites
+     * @param xs (double[]): x-coordinates of the sites
+     * @param ys (double[]): y-coordinates of the sites
+     * @param n (int): the number of sites
+     * @return (List of Vector): the distinct sites, in their order (the list is reused)
+     */
+    private List<Vector> weld(double[] xs, double[] ys, int n){
+        if(welding == null)
+            welding = new PointSet(Vector.EPSILON, n);
+        else
+            welding.clear();
+        next.clear();
+        for(int i = 0; i < n; i++)
+            if(welding.add(xs[i], ys[i]) == next.size())
+                next.add(new Vector(xs[i], ys[i]));
+        return next;
+    }
+
+    /**
+     * @param sites (Set of Vector): points
+     * @return (PointArray): the points, in the iteration order of the set
+     */
+    static PointArray toArray(Set<Vector> sites){
+        PointArray array = new PointArray(sites.size());
+        for(Vector v : sites)
+            array.add(v);
+        return array;
+    }
+
+    /**
+     * @param sites (PointArray): points
+     * @return (Set of Vector): the points
+     */
+    static Set<Vector> toSet(PointArray sites){
+        Set<Vector> set = new HashSet<>(2 * sites.size());
+        for(int i = 0; i < sites.size(); i++)
+            set.add(sites.get(i));
+        return set;
+    }
+
+    /**
+     * @param sites (PointArray): points
+     * @return (PointArray): a copy of the points
+     */
+    static PointArray copy(PointArray sites){
+        PointArray copy = new PointArray(sites.size());
+        for(int i = 0; i < sites.size(); i++)
+            copy.add(sites.x(i), sites.y(i));
+        return copy;
+    }
+
+    /**
+     * Move the sites whose displacement is greater than the local threshold, rebuilding only the cells around them.
+     * The rebuilt cells are collected into the dirty ones, the cells keeping their index
+     * @param n (int): the number of sites
+     * @return (int): the number of moved sites, -1 if too many sites should move: the diagram is then left unchanged
+     */
+    private int moveLocally(int n){
+        int moving = 0;
+        for(int i = 0; i < n; i++)
+            if(displacements[i] > localThreshold)
+                moving++;
+        if(moving > LOCAL_FRACTION * n)
+            return -1;
+
+        if(marks.length < n){
+            marks = new int[n];
+            dirty = new int[n];
+        }
+        stamp++;
+        dirtyCount = 0;
+        for(int i = 0; i < n; i++){
+            if(displacements[i] <= localThreshold)
+                continue;
+            // The moved site is the centroid of its cell, which keeps it until it is rebuilt
+            positions.set(i, centroids.x(i), centroids.y(i));
+            for(VoronoiCell cell : local.moveSite(cells[i], centroids.get(i))){
+                int id = cell.getId();
+                if(marks[id] != stamp){
+                    marks[id] = stamp;
+                    dirty[dirtyCount++] = id;
+                }
+            }
+        }
+        return moving;
+    }
+
+    /** @return (int): the number of iterations actually used by the last relaxation */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** @return (double): the maximum site displacement of the last iteration */
+    public double getMaxDisplacement() {
+        return maxDisplacement;
+    }
+
+    /** @return (double): the mean site displacement of the last iteration */
+    public double getMeanDisplacement() {
+        return meanDisplacement;
+    }
+
+    /** @return (VoronoiDiagram): the diagram built during the last iteration, null if no iteration was ever done */
+    public VoronoiDiagram getDiagram() {
+        return diagram;
+    }
+
+
+    /** Compute the centroids of a range of cells, splitting it in parallel tasks */
+    private static final class CentroidTask extends RecursiveAction {
+
+        private final VoronoiCell[] cells;
+        private final DensityField density;
+        private final PointArray centroids;
+        private final int[] indices;
+        private final int from, to;
+
+        /**
+         * Default CentroidTask constructor
+         * @param cells (VoronoiCell[]): all the cells
+         * @param density (DensityField): the density of the weighted centroids, may be null
+         * @param centroids (PointArray): output centroids (same index as the cells), already sized
+         * @param indices (int[]): the indices of the cells of the range, null for the cells themselves
+         * @param from (int): first cell of the range (inclusive)
+         * @param to (int): last cell of the range (exclusive)
+         */
+        CentroidTask(VoronoiCell[] cells, DensityField density, PointArray centroids, int[] indices, int from, int to){
+            this.cells = cells;
+            this.density = density;
+            this.centroids = centroids;
+            this.indices = indices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= CHUNK){
+                for(int k = from; k < to; k++){
+                    int i = indices == null ? k : indices[k];
+                    Vector c = density == null ? cells[i].center() : cells[i].center(density);
+                    centroids.set(i, c.x, c.y);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CentroidTask(cells, density, centroids, indices, from, mid),
+                    new CentroidTask(cells, density, centroids, indices, mid, to));
+        }
+    }
+}
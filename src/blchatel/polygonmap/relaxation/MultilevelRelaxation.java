@@ -0,0 +1,221 @@
+package blchatel.polygonmap.relaxation;
+
+import blchatel.polygonmap.fortune.VoronoiCell;
+import blchatel.polygonmap.fortune.VoronoiDiagram;
+import blchatel.polygonmap.fortune.VoronoiEngine;
+import blchatel.polygonmap.geometry2d.DensityField;
+import blchatel.polygonmap.geometry2d.PointArray;
+import blchatel.polygonmap.geometry2d.Random;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Multilevel (coarse to fine) Lloyd's relaxation
+ * Most of the Lloyd iterations on a large site set are spent moving the sites over long distances,
+ * which a much smaller site set does as well for a fraction of the cost:
+ * - The coarsest level relaxes a subsample of the sites, RATIO times smaller than the next level
+ * - Each finer level keeps the relaxed sites of the previous one and completes them with new sites
+ *   spread inside their cells, each cell receiving the same number of sites: the new set is already
+ *   close to a centroidal one, and only a few iterations are needed at this level
+ * The number of sites of a level being divided by RATIO at each coarser level, an iteration of the coarse
+ * levels costs a fraction of a full build only: e.g. 20, 5, 3 iterations on three levels cost
+ * 20/16 + 5/4 + 3 = 5.5 builds of the whole site set
+ * Note: only the coarsest level uses the given sites, the other ones are seeded in the relaxed cells
+ * @see LloydRelaxation
+ */
+public class MultilevelRelaxation {
+
+    /** Ratio between the number of sites of two consecutive levels */
+    public static final int RATIO = 4;
+    /** Minimum number of sites of the coarsest level */
+    private static final int MIN_SITES = 16;
+
+    /** Listener notified after each iteration of each level */
+    public interface Listener {
+
+        /**
+         * Called after each iteration
+         * @param level (int): the level number (starting at 0 for the coarsest one)
+         * @param iteration (int): the iteration number in this level (starting at 1)
+         * @param diagram (VoronoiDiagram): the diagram built during this iteration (i.e. before the sites moved)
+         * @param maxDisplacement (double): the maximum site displacement of this iteration
+         * @param meanDisplacement (double): the mean site displacement of this iteration
+         */
+        void onIteration(int level, int iteration, VoronoiDiagram diagram, double maxDisplacement, double meanDisplacement);
+    }
+
+    /// One relaxation per level, from the coarsest to the finest one
+    private final LloydRelaxation[] levels;
+    /// Optional density field of the weighted centroids
+    private DensityField density;
+    /// Random generator sampling the new sites of the finer levels
+    private final Random random;
+
+    /// Statistics of the last relaxation
+    private int iterations;
+    private double work;
+
+    /**
+     * Default MultilevelRelaxation constructor
+     * @param box (Rectangle): the bounding box of the diagrams
+     * @param iterations (int[]): the maximum number of iterations of each level, from the coarsest to the finest
+     * @param tolerance (double): the maximum site displacement under which the relaxation of a level stops
+     * @param random (Random): the random generator sampling the new sites of the finer levels
+     */
+    public MultilevelRelaxation(Rectangle box, int[] iterations, double tolerance, Random random){
+        if(iterations.length == 0)
+            throw new IllegalArgumentException("At least one level is expected");
+        for(int its : iterations)
+            if(its < 1)
+                throw new IllegalArgumentException("Each level needs at least one iteration");
+        this.levels = new LloydRelaxation[iterations.length];
+        for(int l = 0; l < levels.length; l++)
+            levels[l] = new LloydRelaxation(box, iterations[l], tolerance);
+        this.random = random;
+    }
+
+    /**
+     * Engine setter, for all the levels
+     * @param engine (VoronoiEngine): the engine building the diagrams
+     */
+    public void setEngine(VoronoiEngine engine) {
+        for(LloydRelaxation level : levels)
+            level.setEngine(engine);
+    }
+
+    /**
+     * Enable the local mode of all the levels, the DelaunayVoronoi engine being set first
+     * @param threshold (double): the displacement above which a site is moved, 0 to disable the local mode
+     * @see LloydRelaxation#setLocalThreshold(double)
+     */
+    public void setLocalThreshold(double threshold) {
+        for(LloydRelaxation level : levels)
+            level.setLocalThreshold(threshold);
+    }
+
+    /**
+     * Density setter, for all the levels
+     * @param density (DensityField): the density of the weighted centroids, null for the uniform density
+     */
+    public void setDensity(DensityField density) {
+        this.density = density;
+        for(LloydRelaxation level : levels)
+            level.setDensity(density);
+    }
+
+    /**
+     * Listener setter
+     * @param listener (Listener): notified after each iteration, may be null
+     */
+    public void setListener(Listener listener) {
+        for(int l = 0; l < levels.length; l++){
+            final int level = l;
+            levels[l].setListener(listener == null ? null :
+                    (i, diagram, max, mean) -> listener.onIteration(level, i, diagram, max, mean));
+        }
+    }
+
+    /**
+     * Relax the given sites
+     * @param sites (Set of Vector): the initial sites
+     * @return (Set of Vector): the relaxed sites, as many as the given ones
+     */
+    public Set<Vector> relax(Set<Vector> sites){
+        return LloydRelaxation.toSet(relax(LloydRelaxation.toArray(sites)));
+    }
+
+    /**
+     * Relax the given sites
+     * @param sites (PointArray): the initial sites
+     * @return (PointArray): the relaxed sites, as many as the given ones (but the welded ones), a new array
+     */
+    public PointArray relax(PointArray sites){
+
+        int n = sites.size();
+        iterations = 0;
+        work = 0;
+
+        // The coarsest level is a subsample (the first sites) of the given ones
+        int size = size(n, 0);
+        PointArray current = new PointArray(size);
+        for(int i = 0; i < size; i++)
+            current.add(sites.x(i), sites.y(i));
+
+        for(int l = 0; ; l++){
+            current = levels[l].relax(current);
+            iterations += levels[l].getIterations();
+            work += (double)levels[l].getIterations() * current.size() / n;
+            if(l == levels.length-1 || levels[l].getDiagram() == null)
+                return current;
+            current = refine(levels[l].getDiagram(), size(n, l+1));
+        }
+    }
+
+    /**
+     * Number of sites of a level
+     * @param n (int): the number of sites of the finest level
+     * @param level (int): the level
+     * @return (int): n divided by RATIO for each level between the given one and the finest one
+     */
+    private int size(int n, int level){
+        int size = n;
+        for(int l = level; l < levels.length-1 && size > MIN_SITES; l++)
+            size = (size + RATIO - 1) / RATIO;
+        return Math.min(n, Math.max(size, MIN_SITES));
+    }
+
+    /**
+     * Seed the sites of a finer level: the count is spread evenly over the cells and the k sites of a cell
+     * are the centroids of k equal sectors of the disk of same area centered on the cell centroid,
+     * which is the centroidal split of a round cell (a cell receiving a single site keeps its centroid).
+     * The sectors are randomly rotated to avoid aligning the sites of neighbor cells
+     * @param diagram (VoronoiDiagram): the diagram of the last iteration of the coarser level
+     * @param size (int): the number of sites of the finer level
+     * @return (PointArray): the sites of the finer level
+     */
+    private PointArray refine(VoronoiDiagram diagram, int size){
+        List<VoronoiCell> cells = diagram.getCells();
+        int count = cells.size();
+        PointArray sites = new PointArray(size);
+        for(int i = 0; i < count; i++){
+            VoronoiCell cell = cells.get(i);
+            Vector center = density == null ? cell.center() : cell.center(density);
+            int children = (int)((long)(i+1) * size / count - (long)i * size / count);
+            if(children <= 1){
+                sites.add(center);
+                continue;
+            }
+            // Centroid of a sector of angle a of the disk of radius r: 4 r sin(a/2) / (3 a) away from the center
+            double sector = 2 * Math.PI / children;
+            double radius = Math.sqrt(cell.surface() / 2 / Math.PI);
+            double distance = 4 * radius * Math.sin(sector / 2) / (3 * sector);
+            double angle = random.nextDouble() * sector;
+            for(int c = 0; c < children; c++, angle += sector){
+                Vector v = new Vector(center.x + distance * Math.cos(angle), center.y + distance * Math.sin(angle));
+                // A sector of an elongated cell (e.g. along the box sides) may leave the cell, as the children
+                // must stay in their parent cell, a random point of the cell is taken instead
+                sites.add(cell.contains(v) ? v : cell.sample(random));
+            }
+        }
+        return sites;
+    }
+
+    /** @return (int): the number of iterations of all the levels of the last relaxation */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** @return (double): the cost of the last relaxation, in number of builds of the finest level */
+    public double getWork() {
+        return work;
+    }
+
+    /** @return (VoronoiDiagram): the diagram built during the last iteration of the finest level */
+    public VoronoiDiagram getDiagram() {
+        return levels[levels.length-1].getDiagram();
+    }
+}
@@ -0,0 +1,51 @@
+package blchatel.polygonmap.relaxation;
+
+import blchatel.polygonmap.geometry2d.Random;
+import blchatel.polygonmap.geometry2d.Rectangle;
+import blchatel.polygonmap.geometry2d.Vector;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Simple benchmark of the centroidal Voronoi tessellation methods.
+ * The target energy is the one reached by a given number of Lloyd iterations, each method then prints
+ * the number of diagram builds (i.e. energy evaluations) and the time it needs to reach it.
+ * Usage: RelaxationBenchmark [sites] [lloydIterations]
+ */
+public class RelaxationBenchmark {
+
+    /// The bounding box of all the benchmarks
+    private static final Rectangle BOX = new Rectangle(0, 0, 800, 800);
+
+    /**
+     * Main entry point
+     * @param args (String[]): [0]-optional number of sites, [1]-optional number of Lloyd iterations giving the target
+     */
+    public static void main(String[] args){
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int its = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        Random random = new Random(12345);
+        Set<Vector> sites = new HashSet<>();
+        while(sites.size() < n)
+            sites.add(BOX.sample(random));
+
+        CvtOptimizer lloyd = new CvtOptimizer(BOX, its, 0);
+        lloyd.setMethod(CvtOptimizer.Method.LLOYD);
+        lloyd.optimize(sites);
+        double target = lloyd.getEnergy();
+        System.out.printf("== %d sites, target energy %.6f (%d Lloyd iterations)%n", n, target, its);
+
+        for(CvtOptimizer.Method method : CvtOptimizer.Method.values()){
+            CvtOptimizer optimizer = new CvtOptimizer(BOX, 10 * its, 0);
+            optimizer.setMethod(method);
+            optimizer.setTargetEnergy(target);
+            long start = System.nanoTime();
+            optimizer.optimize(sites);
+            System.out.printf("%-14s %5d builds %10.2f ms energy %.6f%n", method, optimizer.getBuilds(),
+                    (System.nanoTime() - start) / 1e6, optimizer.getEnergy());
+        }
+    }
+}